@@ -8,18 +8,30 @@ import com.wonkglorg.util.interfaces.functional.checked.CheckedFunction;
 import com.wonkglorg.util.interfaces.functional.database.DataTypeHandler;
 import com.wonkglorg.util.ip.IPv4;
 import com.wonkglorg.util.ip.IPv6;
+import com.wonkglorg.utilitylib.database.logging.ErrorReporter;
+import com.wonkglorg.utilitylib.database.processor.DbRecordProcessor;
+import com.wonkglorg.utilitylib.database.processor.GeneratedRecordMapper;
+import com.wonkglorg.utilitylib.database.query.KeyLookup;
+import com.wonkglorg.utilitylib.database.query.KeysetPager;
+import com.wonkglorg.utilitylib.database.query.StreamingProfile;
+import com.wonkglorg.utilitylib.database.sql.StatementGenerator;
+import com.wonkglorg.utilitylib.database.transfer.DatabaseDump;
+import com.wonkglorg.utilitylib.database.values.LazyImage;
 import org.jetbrains.annotations.NotNull;
 
-import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.nio.file.Path;
 import java.lang.reflect.RecordComponent;
 import java.sql.Date;
 import java.sql.*;
+import java.time.*;
 import java.util.List;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.logging.Level;
@@ -36,8 +48,62 @@ import static com.wonkglorg.util.string.StringUtils.format;
 public abstract class Database implements AutoCloseable {
 	protected final String driver;
 	protected final String classloader;
+	protected final DatabaseType databaseType;
 	protected final Logger logger = Logger.getLogger(Database.class.getName());
+	/**
+	 * Logs the errors of queries, repeated errors are summarized instead of logged each time
+	 */
+	protected final ErrorReporter errorReporter;
+	/**
+	 * How large results are streamed, defaults to the profile of the {@link DatabaseType}
+	 */
+	private volatile StreamingProfile streamingProfile;
 	private static final Map<Class<?>, DataTypeHandler<?>> dataTypeMapper = new HashMap<>();
+	/**
+	 * Types registered with {@link #addDataMapper(Class, DataTypeHandler)}, their handlers take
+	 * priority over {@link #dialectDefaultTypeMapper}
+	 */
+	private static final Set<Class<?>> registeredTypes = ConcurrentHashMap.newKeySet();
+	/**
+	 * Handlers explicitly set for this database, they take priority over every other handler
+	 */
+	private final Map<Class<?>, DataTypeHandler<?>> dialectTypeMapper;
+	/**
+	 * Handlers chosen for the {@link DatabaseType} of this database, used for types whose best
+	 * storage differs between database types unless a handler was registered for them
+	 */
+	private final Map<Class<?>, DataTypeHandler<?>> dialectDefaultTypeMapper;
+	/**
+	 * Mappers generated by the {@link DbRecordProcessor}, empty if a record has none
+	 */
+	private static final ClassValue<Optional<GeneratedRecordMapper<?>>> generatedMappers = new ClassValue<>() {
+		@Override
+		protected Optional<GeneratedRecordMapper<?>> computeValue(Class<?> type) {
+			try {
+				Class<?> mapperClass = Class.forName(type.getName() + GeneratedRecordMapper.SUFFIX, true,
+						type.getClassLoader());
+				return Optional.of(
+						(GeneratedRecordMapper<?>) mapperClass.getDeclaredConstructor().newInstance());
+			} catch (ClassNotFoundException e) {
+				return Optional.empty();
+			} catch (ReflectiveOperationException | ClassCastException e) {
+				Logger.getLogger(Database.class.getName())
+						.log(Level.WARNING, "Failed to load generated mapper for " + type.getName(), e);
+				return Optional.empty();
+			}
+		}
+	};
+	/**
+	 * Handlers created on demand for enums without an explicitly registered handler, a ClassValue
+	 * does not keep the enum's classloader alive once it is unloaded
+	 */
+	private static final ClassValue<DataTypeHandler<?>> enumTypeMapper = new ClassValue<>() {
+		@Override
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		protected DataTypeHandler<?> computeValue(Class<?> type) {
+			return new TypeHandlerEnum(type);
+		}
+	};
 
 	static {
 		dataTypeMapper.put(Blob.class, new TypeHandlerBlob());
@@ -54,6 +120,8 @@ public abstract class Database implements AutoCloseable {
 		dataTypeMapper.put(Float.class, new TypeHandlerFloat());
 		dataTypeMapper.put(float.class, new TypeHandlerFloat());
 		dataTypeMapper.put(Image.class, new TypeHandlerImage());
+		dataTypeMapper.put(BufferedImage.class, new TypeHandlerImage());
+		dataTypeMapper.put(LazyImage.class, new TypeHandlerLazyImage());
 		dataTypeMapper.put(Integer.class, new TypeHandlerInteger());
 		dataTypeMapper.put(int.class, new TypeHandlerInteger());
 		dataTypeMapper.put(Long.class, new TypeHandlerLong());
@@ -65,17 +133,82 @@ public abstract class Database implements AutoCloseable {
 		dataTypeMapper.put(Timestamp.class, new TypeHandlerTimeStamp());
 		dataTypeMapper.put(IPv4.class, new TypeHandlerIpv4());
 		dataTypeMapper.put(IPv6.class, new TypeHandlerIpv6());
+		dataTypeMapper.put(UUID.class, new TypeHandlerUuid());
+		dataTypeMapper.put(Instant.class, new TypeHandlerInstant());
+		dataTypeMapper.put(LocalDateTime.class, new TypeHandlerLocalDateTime());
+		dataTypeMapper.put(LocalDate.class, new TypeHandlerLocalDate());
+		dataTypeMapper.put(LocalTime.class, new TypeHandlerLocalTime());
+		dataTypeMapper.put(Duration.class, new TypeHandlerDuration());
 	}
 
 
 	protected Database(@NotNull DatabaseType databaseType) {
 		this.driver = databaseType.getDriver();
 		this.classloader = databaseType.getClassLoader();
+		this.databaseType = databaseType;
+		this.dialectTypeMapper = new ConcurrentHashMap<>();
+		this.dialectDefaultTypeMapper = new ConcurrentHashMap<>();
+		this.errorReporter = new ErrorReporter(logger);
+		this.streamingProfile = StreamingProfile.of(this.databaseType);
+		registerDialectDataMappers();
 	}
 
 	protected Database(@NotNull final String driver, @NotNull final String classLoader) {
 		this.driver = driver;
 		this.classloader = classLoader;
+		this.databaseType = DatabaseType.of(driver, classLoader);
+		this.dialectTypeMapper = new ConcurrentHashMap<>();
+		this.dialectDefaultTypeMapper = new ConcurrentHashMap<>();
+		this.errorReporter = new ErrorReporter(logger);
+		this.streamingProfile = StreamingProfile.of(this.databaseType);
+		registerDialectDataMappers();
+	}
+
+	/**
+	 * Creates a view of another database sharing its handlers, handlers registered on either are
+	 * used by both
+	 *
+	 * @param source the database to share the handlers of
+	 */
+	protected Database(@NotNull Database source) {
+		this.driver = source.driver;
+		this.classloader = source.classloader;
+		this.databaseType = source.databaseType;
+		this.dialectTypeMapper = source.dialectTypeMapper;
+		this.dialectDefaultTypeMapper = source.dialectDefaultTypeMapper;
+		this.errorReporter = source.errorReporter;
+		this.streamingProfile = source.streamingProfile;
+	}
+
+	/**
+	 * Registers the default handlers whose storage depends on the {@link DatabaseType} of this
+	 * database, handlers registered with {@link #addDataMapper(Class, DataTypeHandler)} still win
+	 */
+	private void registerDialectDataMappers() {
+		if (databaseType == null) {
+			return;
+		}
+		dialectDefaultTypeMapper.put(UUID.class, TypeHandlerUuid.forDatabaseType(databaseType));
+		putTemporalHandlers(dialectDefaultTypeMapper, TemporalStorage.forDatabaseType(databaseType));
+	}
+
+	/**
+	 * Sets how {@link Instant}, {@link LocalDateTime}, {@link LocalDate} and {@link LocalTime} are
+	 * stored by this database, defaults to epoch millis for Sqlite and native types otherwise. Like
+	 * {@link #addDialectDataMapper(Class, DataTypeHandler)} this overrides global handlers.
+	 *
+	 * @param storage the storage to use
+	 */
+	public void setTemporalStorage(TemporalStorage storage) {
+		putTemporalHandlers(dialectTypeMapper, storage);
+	}
+
+	private static void putTemporalHandlers(Map<Class<?>, DataTypeHandler<?>> mapper,
+			TemporalStorage storage) {
+		mapper.put(Instant.class, new TypeHandlerInstant(storage));
+		mapper.put(LocalDateTime.class, new TypeHandlerLocalDateTime(storage));
+		mapper.put(LocalDate.class, new TypeHandlerLocalDate(storage));
+		mapper.put(LocalTime.class, new TypeHandlerLocalTime(storage));
 	}
 
 	/**
@@ -100,6 +233,14 @@ public abstract class Database implements AutoCloseable {
 	 */
 	public abstract void disconnect();
 
+	/**
+	 * @return true if multiple queries can run at the same time on separate connections, false if
+	 * the database uses a single connection and concurrent queries would only queue up
+	 */
+	public boolean supportsParallelExecution() {
+		return false;
+	}
+
 	/**
 	 * Close the result set and the statement
 	 *
@@ -112,14 +253,14 @@ public abstract class Database implements AutoCloseable {
 				statement = resultSet.getStatement();
 				resultSet.close();
 			} catch (SQLException e) {
-				logger.log(Level.SEVERE, e.getMessage(), e);
+				errorReporter.report(e);
 			}
 		}
 		if (statement != null) {
 			try {
 				statement.close();
 			} catch (SQLException e) {
-				logger.log(Level.SEVERE, e.getMessage(), e);
+				errorReporter.report(e);
 			}
 		}
 	}
@@ -174,7 +315,7 @@ public abstract class Database implements AutoCloseable {
 			}
 			return list;
 		} catch (SQLException e) {
-			logger.log(Level.SEVERE, e.getMessage(), e);
+			errorReporter.report(e);
 			return null;
 		}
 	}
@@ -189,13 +330,154 @@ public abstract class Database implements AutoCloseable {
 	 */
 	public void recordToDatabase(Record record, PreparedStatement statement, int offset) {
 		try {
-			RecordComponent[] components = record.getClass().getRecordComponents();
-			for (int i = 0; i < components.length; i++) {
-				Object value = components[i].getAccessor().invoke(record);
-				dataTypeMapper.get(value.getClass()).setParameter(statement, i + 1 + offset, value);
+			bindRecord(record, statement, offset);
+		} catch (SQLException e) {
+			errorReporter.report(e);
+		}
+	}
+
+	/**
+	 * Binds a record like {@link #recordToDatabase(Record, PreparedStatement, int)} but fails
+	 * instead of reporting, so a statement is never run with placeholders left from an earlier use
+	 *
+	 * @throws SQLException if a component has no handler or could not be read or bound
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	void bindRecord(Record record, PreparedStatement statement, int offset) throws SQLException {
+		GeneratedRecordMapper mapper = getGeneratedMapper(record.getClass());
+		if (mapper != null) {
+			mapper.write(this, record, statement, offset);
+			return;
+		}
+		RecordComponent[] components = record.getClass().getRecordComponents();
+		for (int i = 0; i < components.length; i++) {
+			Object value;
+			try {
+				value = components[i].getAccessor().invoke(record);
+			} catch (ReflectiveOperationException e) {
+				throw new SQLException("Could not read component " + components[i].getName(), e);
+			}
+			DataTypeHandler<?> handler = getDataMapper(components[i].getType());
+			if (handler == null && value != null) {
+				handler = getDataMapper(value.getClass());
+			}
+			if (handler == null) {
+				throw new SQLException(format("Data type {1} does not have a valid mapping function",
+						components[i].getType()));
+			}
+			try {
+				handler.setParameter(statement, i + 1 + offset, value);
+			} catch (RuntimeException e) {
+				throw new SQLException("Could not bind component " + components[i].getName(), e);
+			}
+		}
+	}
+
+	/**
+	 * Pages through the rows of a query with keyset pagination, each page continues after the key of
+	 * the previous page's last row and is fetched separately
+	 *
+	 * @param baseQuery the unordered query to page through
+	 * @param keyColumns the unique columns the rows are ordered and continued by
+	 * @param pageSize the amount of rows per page
+	 * @param adapter maps a row, like {@link #recordAdapter(Class)}
+	 * @param parameters the parameters of the base query
+	 * @param <T> the type of the mapped rows
+	 * @return an iterator over the pages
+	 */
+	public <T> KeysetPager<T> keysetScan(String baseQuery, List<String> keyColumns, int pageSize,
+			CheckedFunction<ResultSet, T> adapter, Object... parameters) {
+		return new KeysetPager<>(this, baseQuery, keyColumns, pageSize, adapter, parameters);
+	}
+
+	/**
+	 * Looks up rows by many keys at once, keys are queried in chunks within the parameter limit of
+	 * this database, in parallel if supported. Keep a {@link KeyLookup} for repeated lookups.
+	 *
+	 * @param baseQuery the query selecting the rows, for example {@code SELECT * FROM players}
+	 * @param keyColumn the column holding the key
+	 * @param keys the keys to look up
+	 * @param adapter maps a row, like {@link #recordAdapter(Class)}
+	 * @param keyOf reads the key of a mapped row
+	 * @param <K> the type of the key
+	 * @param <T> the type of the mapped rows
+	 * @return the rows by key, keys without a row are missing
+	 */
+	public <K, T> DatabaseSingleObjResponse<Map<K, T>> findAllByKeys(String baseQuery,
+			String keyColumn, Collection<? extends K> keys, CheckedFunction<ResultSet, T> adapter,
+			Function<? super T, ? extends K> keyOf) {
+		return new KeyLookup<K, T>(this, baseQuery, keyColumn, adapter, keyOf).findAll(keys);
+	}
+
+	/**
+	 * Streams the rows of a query to a consumer while they are read, the result is never held in
+	 * memory as a whole. The driver is configured with the {@link #getStreamingProfile() streaming
+	 * profile}, the connection stays in use until all rows are consumed.
+	 *
+	 * @param sql the query
+	 * @param adapter maps a row, like {@link #recordAdapter(Class)}
+	 * @param consumer receives every row
+	 * @param parameters the parameters of the query
+	 * @param <T> the type of the mapped rows
+	 * @return the amount of rows streamed
+	 */
+	public <T> DatabaseSingleObjResponse<Long> streamQuery(String sql,
+			CheckedFunction<ResultSet, T> adapter, Consumer<? super T> consumer, Object... parameters) {
+		StreamingProfile profile = streamingProfile;
+		return executeSingleObjQuery(connection -> {
+			try (StreamingProfile.Session session = profile.begin(connection);
+					PreparedStatement statement = session.prepareStatement(sql)) {
+				setParameters(statement, 0, parameters);
+				long count = 0;
+				try (ResultSet resultSet = statement.executeQuery()) {
+					while (resultSet.next()) {
+						consumer.accept(adapter.applyThrows(resultSet));
+						count++;
+					}
+				}
+				return count;
+			}
+		});
+	}
+
+	public StreamingProfile getStreamingProfile() {
+		return streamingProfile;
+	}
+
+	/**
+	 * Replaces the streaming profile of this database, for example to use a server side cursor with
+	 * MySQL's {@code useCursorFetch=true}
+	 *
+	 * @param streamingProfile the profile to use
+	 */
+	public void setStreamingProfile(StreamingProfile streamingProfile) {
+		this.streamingProfile = streamingProfile;
+	}
+
+	/**
+	 * Binds values to a statement using the registered {@link DataTypeHandler}s, values of types
+	 * without a handler are bound with {@link PreparedStatement#setObject(int, Object)}
+	 *
+	 * @param statement the statement to bind to
+	 * @param offset the amount of parameters before the first value
+	 * @param values the values to bind
+	 * @throws SQLException if a value could not be bound
+	 */
+	public void setParameters(PreparedStatement statement, int offset, Object... values)
+			throws SQLException {
+		for (int i = 0; i < values.length; i++) {
+			Object value = values[i];
+			int index = i + 1 + offset;
+			if (value == null) {
+				statement.setObject(index, null);
+				continue;
+			}
+			DataTypeHandler<?> handler = getDataMapper(value.getClass());
+			if (handler == null) {
+				statement.setObject(index, value);
+			} else {
+				handler.setParameter(statement, index, value);
 			}
-		} catch (Exception e) {
-			logger.log(Level.SEVERE, e.getMessage(), e);
 		}
 	}
 
@@ -205,6 +487,9 @@ public abstract class Database implements AutoCloseable {
 	 * <p/>
 	 * If any of the record columns do not have an adapter mapped a custom can be added / overwritten
 	 * with {@link #addDataMapper(Class, DataTypeHandler)}
+	 * <p/>
+	 * Records annotated with {@link com.wonkglorg.utilitylib.database.annotations.DbRecord} use
+	 * the mapper generated at compile time instead of reflection.
 	 *
 	 * @param recordClass the record class to map
 	 * @param <T> the type of the record
@@ -212,11 +497,44 @@ public abstract class Database implements AutoCloseable {
 	 */
 	protected <T extends Record> CheckedFunction<ResultSet, T> genericRecordAdapter(
 			Class<T> recordClass, boolean useIndex, int offset) {
+		GeneratedRecordMapper<T> mapper = getGeneratedMapper(recordClass);
+		if (mapper != null) {
+			return resultSet -> {
+				if (resultSet == null) {
+					throw new SQLException("Result set is null");
+				}
+				try {
+					return mapper.read(this, resultSet, useIndex, offset);
+				} catch (SQLException e) {
+					throw new IncorrectTypeConversionException(
+							"Failed to map record components: record(" + recordClass.getName() + ")", null,
+							recordClass, e);
+				}
+			};
+		}
+
+		//resolved once per adapter instead of once per row
+		RecordComponent[] components = recordClass.getRecordComponents();
+		String[] columnNames = new String[components.length];
+		Class<?>[] types = new Class<?>[components.length];
+		DataTypeHandler<?>[] handlers = new DataTypeHandler<?>[components.length];
+		for (int i = 0; i < components.length; i++) {
+			columnNames[i] = components[i].getName();
+			types[i] = components[i].getType();
+			handlers[i] = getDataMapper(types[i]);
+		}
+		Constructor<T> constructor;
+		try {
+			constructor = recordClass.getDeclaredConstructor(types);
+		} catch (NoSuchMethodException e) {
+			constructor = null;
+		}
+		final Constructor<T> recordConstructor = constructor;
+
 		return resultSet -> {
 			Class<?> type = null;
 			String columnName = null;
 			try {
-				RecordComponent[] components = recordClass.getRecordComponents();
 				Object[] args = new Object[components.length];
 
 				if (resultSet == null) {
@@ -224,10 +542,9 @@ public abstract class Database implements AutoCloseable {
 				}
 
 				for (int i = 0; i < components.length; i++) {
-					RecordComponent component = components[i];
-					columnName = component.getName();
-					type = component.getType();
-					var mappingFunction = dataTypeMapper.get(type);
+					columnName = columnNames[i];
+					type = types[i];
+					var mappingFunction = handlers[i];
 					if (mappingFunction == null) {
 						throw new NullPointerException(
 								format("Data type {1} does not have a " + "valid mapping function", type));
@@ -239,15 +556,12 @@ public abstract class Database implements AutoCloseable {
 						args[i] = mappingFunction.getParameter(resultSet, columnName);
 					}
 				}
-				try {
-					return recordClass.getDeclaredConstructor(Arrays.stream(components)//
-							.map(RecordComponent::getType)//
-							.toArray(Class<?>[]::new)).newInstance(args);
-				} catch (NoSuchMethodException e) {
+				if (recordConstructor == null) {
 					throw new RuntimeException(
 							"Failed to create record: " + recordClass.getName() + " with args: "
-									+ Arrays.toString(args), e);
+									+ Arrays.toString(args));
 				}
+				return recordConstructor.newInstance(args);
 
 			} catch (SQLException e) {
 				throw new IncorrectTypeConversionException(
@@ -258,6 +572,17 @@ public abstract class Database implements AutoCloseable {
 		};
 	}
 
+	/**
+	 * @param recordClass the record class
+	 * @param <T> the type of the record
+	 * @return the mapper generated for the record at compile time or null if it has none
+	 */
+	@SuppressWarnings("unchecked")
+	protected static <T extends Record> GeneratedRecordMapper<T> getGeneratedMapper(
+			Class<T> recordClass) {
+		return (GeneratedRecordMapper<T>) generatedMappers.get(recordClass).orElse(null);
+	}
+
 	/**
 	 * Maps a record constructor to its matching sql columns (names MUST match, or it will not work)
 	 * <p/>
@@ -290,13 +615,150 @@ public abstract class Database implements AutoCloseable {
 	}
 
 
+	/**
+	 * Inserts all records with multi row inserts, each statement contains as many rows as the
+	 * {@link DatabaseType} allows. Component names must match the column names. If the records need
+	 * more than one statement they are written in one transaction unless the caller runs its own.
+	 *
+	 * @param table the table to insert into
+	 * @param records the records to insert
+	 * @param <T> the type of the record
+	 * @return the total amount of rows affected
+	 */
+	public <T extends Record> DatabaseUpdateResponse insertRecords(String table, List<T> records) {
+		StatementGenerator generator = StatementGenerator.of(requireDatabaseType());
+		return writeRecords(records, (recordClass, rows) -> generator.insert(recordClass, table, rows));
+	}
+
+	/**
+	 * Inserts all records or updates their non key columns if a row with the same key exists, using
+	 * the upsert form of the {@link DatabaseType}. Component names must match the column names. If the
+	 * records need more than one statement they are written in one transaction unless the caller runs
+	 * its own.
+	 *
+	 * @param table the table to upsert into
+	 * @param records the records to upsert
+	 * @param keyColumns the primary or unique key columns identifying existing rows
+	 * @param <T> the type of the record
+	 * @return the total amount of rows affected as reported by the driver
+	 */
+	public <T extends Record> DatabaseUpdateResponse upsertRecords(String table, List<T> records,
+			String... keyColumns) {
+		StatementGenerator generator = StatementGenerator.of(requireDatabaseType());
+		return writeRecords(records,
+				(recordClass, rows) -> generator.upsert(recordClass, table, rows, keyColumns));
+	}
+
+	private <T extends Record> DatabaseUpdateResponse writeRecords(List<T> records,
+			BiFunction<Class<? extends Record>, Integer, String> sqlForRows) {
+		if (records.isEmpty()) {
+			return new DatabaseUpdateResponse(null, 0);
+		}
+		Class<? extends Record> recordClass = records.get(0).getClass();
+		int columnCount = recordClass.getRecordComponents().length;
+		int chunkSize = StatementGenerator.of(requireDatabaseType()).maxRowsPerStatement(columnCount);
+
+		return executeUpdate(connection -> {
+			//a write split into several statements must not leave the first chunks committed
+			boolean transaction = records.size() > chunkSize && connection.getAutoCommit();
+			if (!transaction) {
+				return writeChunks(connection, records, recordClass, chunkSize, sqlForRows);
+			}
+			connection.setAutoCommit(false);
+			try {
+				int affected = writeChunks(connection, records, recordClass, chunkSize, sqlForRows);
+				connection.commit();
+				return affected;
+			} catch (SQLException | RuntimeException e) {
+				connection.rollback();
+				throw e;
+			} finally {
+				connection.setAutoCommit(true);
+			}
+		});
+	}
+
+	private <T extends Record> int writeChunks(Connection connection, List<T> records,
+			Class<? extends Record> recordClass, int chunkSize,
+			BiFunction<Class<? extends Record>, Integer, String> sqlForRows) throws SQLException {
+		int columnCount = recordClass.getRecordComponents().length;
+		int affected = 0;
+		int fullChunks = records.size() / chunkSize;
+		if (fullChunks > 0) {
+			//every full chunk shares the same sql so the statement is prepared once
+			try (PreparedStatement statement = connection.prepareStatement(
+					sqlForRows.apply(recordClass, chunkSize))) {
+				for (int chunk = 0; chunk < fullChunks; chunk++) {
+					bindRecords(records, chunk * chunkSize, chunkSize, columnCount, statement);
+					affected += statement.executeUpdate();
+				}
+			}
+		}
+		int remaining = records.size() - fullChunks * chunkSize;
+		if (remaining > 0) {
+			try (PreparedStatement statement = connection.prepareStatement(
+					sqlForRows.apply(recordClass, remaining))) {
+				bindRecords(records, fullChunks * chunkSize, remaining, columnCount, statement);
+				affected += statement.executeUpdate();
+			}
+		}
+		return affected;
+	}
+
+	private void bindRecords(List<? extends Record> records, int from, int count, int columnCount,
+			PreparedStatement statement) throws SQLException {
+		for (int row = 0; row < count; row++) {
+			bindRecord(records.get(from + row), statement, row * columnCount);
+		}
+	}
+
+	/**
+	 * Streams the result of a query into a compressed dump file in constant memory, see
+	 * {@link DatabaseDump}
+	 *
+	 * @param query the query selecting the rows to dump
+	 * @param file the file to write, overwritten if it exists
+	 * @param format the format of the dump
+	 * @return the amount of rows written
+	 */
+	public DatabaseSingleObjResponse<Long> dumpQuery(String query, Path file,
+			DatabaseDump.Format format) {
+		return DatabaseDump.export(this, query, file, format);
+	}
+
+	/**
+	 * Streams a dump file created by {@link #dumpQuery(String, Path, DatabaseDump.Format)} (from any
+	 * database) into a table using batched inserts
+	 *
+	 * @param table the table to insert into
+	 * @param file the dump file
+	 * @param batchSize the amount of rows inserted and committed per batch
+	 * @return the amount of rows inserted
+	 */
+	public DatabaseSingleObjResponse<Long> restoreDump(String table, Path file, int batchSize) {
+		return DatabaseDump.restore(this, table, file, batchSize);
+	}
+
+	/**
+	 * @return the database type
+	 * @throws IllegalStateException if the database was created with a driver not matching any
+	 * {@link DatabaseType}
+	 */
+	protected DatabaseType requireDatabaseType() {
+		if (databaseType == null) {
+			throw new IllegalStateException(
+					"Unknown database type for driver " + driver + ", sql generation is not supported");
+		}
+		return databaseType;
+	}
+
 	public <T> T getSingleObject(ResultSet resultSet, CheckedFunction<ResultSet, T> adapter) {
 		try {
 			if (resultSet.next()) {
 				return adapter.apply(resultSet);
 			}
 		} catch (SQLException e) {
-			logger.log(Level.SEVERE, e.getMessage(), e);
+			errorReporter.report(e);
 		}
 		return null;
 	}
@@ -313,7 +775,7 @@ public abstract class Database implements AutoCloseable {
 			blob.setBytes(1, bytes);
 			return blob;
 		} catch (SQLException e) {
-			logger.log(Level.SEVERE, e.getMessage(), e);
+			errorReporter.report(e);
 		}
 		return null;
 	}
@@ -336,11 +798,17 @@ public abstract class Database implements AutoCloseable {
 		return null;
 	}
 
+	/**
+	 * Encodes an image to a byte array using a writer reused by the calling thread
+	 *
+	 * @param image the image to convert
+	 * @param formatType the informal format name (png, jpg, bmp, gif)
+	 * @return the encoded image
+	 * @throws IOException if the image could not be encoded
+	 */
 	public static byte[] convertToByteArray(BufferedImage image, String formatType)
 			throws IOException {
-		ByteArrayOutputStream baos = new ByteArrayOutputStream();
-		ImageIO.write(image, formatType, baos);
-		return baos.toByteArray();
+		return TypeHandlerImage.encode(image, formatType);
 	}
 
 
@@ -563,7 +1031,8 @@ public abstract class Database implements AutoCloseable {
 
 	/**
 	 * Adds a data mapper function used in {@link #recordAdapter(Class)}
-	 * and{@link #recordIndexAdapter(Class, int)} to map records to the correct type
+	 * and{@link #recordIndexAdapter(Class, int)} to map records to the correct type, it replaces the
+	 * default every database would otherwise choose for its {@link DatabaseType}
 	 *
 	 * @param type the type to map
 	 * @param handler mapper function
@@ -572,9 +1041,59 @@ public abstract class Database implements AutoCloseable {
 	 */
 	@SuppressWarnings("unchecked")
 	public static <T> DataTypeHandler<T> addDataMapper(Class<T> type, DataTypeHandler<T> handler) {
+		registeredTypes.add(type);
 		return (DataTypeHandler<T>) dataTypeMapper.put(type, handler);
 	}
 
+	/**
+	 * Adds a data mapper only used by this database instance, overriding the global mapper added
+	 * with {@link #addDataMapper(Class, DataTypeHandler)} and the default chosen for its
+	 * {@link DatabaseType}
+	 *
+	 * @param type the type to map
+	 * @param handler mapper function
+	 * @param <T> the type of the handler
+	 * @return the previous handler of this database or null
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> DataTypeHandler<T> addDialectDataMapper(Class<T> type, DataTypeHandler<T> handler) {
+		return (DataTypeHandler<T>) dialectTypeMapper.put(type, handler);
+	}
+
+	/**
+	 * Gets the handler used to map the given type for this database. Handlers set for this database
+	 * come first, then handlers registered with {@link #addDataMapper(Class, DataTypeHandler)}, then
+	 * the defaults for its {@link DatabaseType} and finally the built in handlers. Enums without a registered handler are mapped by a
+	 * {@link TypeHandlerEnum} created once per enum class.
+	 *
+	 * @param type the type to get the handler for
+	 * @param <T> the type of the handler
+	 * @return the handler or null if none is registered
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> DataTypeHandler<T> getDataMapper(Class<T> type) {
+		DataTypeHandler<?> handler = dialectTypeMapper.get(type);
+		if (handler == null && !registeredTypes.contains(type)) {
+			handler = dialectDefaultTypeMapper.get(type);
+		}
+		if (handler == null) {
+			handler = dataTypeMapper.get(type);
+		}
+		if (handler == null && type != null && Enum.class.isAssignableFrom(type) && type != Enum.class) {
+			//constants with a body are anonymous subclasses of their enum
+			handler = enumTypeMapper.get(type.isEnum() ? type : type.getSuperclass());
+		}
+		return (DataTypeHandler<T>) handler;
+	}
+
+	/**
+	 * @return the type of this database or null if it was created from a driver not matching any
+	 * {@link DatabaseType}
+	 */
+	public DatabaseType getDatabaseType() {
+		return databaseType;
+	}
+
 	/**
 	 * Removes a data mapper used in  {@link #recordAdapter(Class)} and
 	 * {@link #recordIndexAdapter(Class, int)} to map records to the correct type
@@ -589,19 +1108,29 @@ public abstract class Database implements AutoCloseable {
 	}
 
 	public enum DatabaseType {
-		MYSQL("Mysql", "jdbc:mysql:", "com.mysql.cj.jdbc.Driver"),
-		SQLITE("Sqlite", "jdbc:sqlite:", "org.sqlite.JDBC"),
-		POSTGRESQL("Postgresql", "jdbc:postgresql:", "org.postgresql.Driver"),
-		SQLSERVER("SqlServer", "jdbc:sqlserver:", "com.microsoft.sqlserver.jdbc.SQLServerDriver"),
-		MARIA("MariaDB", "jdbc:mariadb:", "org.mariadb.jdbc.Driver");
+		MYSQL("Mysql", "jdbc:mysql:", "com.mysql.cj.jdbc.Driver", 65535, Integer.MAX_VALUE),
+		//999 is the limit of sqlite versions before 3.32.0 (32766 after) which are still bundled by
+		// older servers
+		SQLITE("Sqlite", "jdbc:sqlite:", "org.sqlite.JDBC", 999, Integer.MAX_VALUE),
+		POSTGRESQL("Postgresql", "jdbc:postgresql:", "org.postgresql.Driver", 32767,
+				Integer.MAX_VALUE),
+		//2100 is the server limit, the driver's sp_prepexec call uses some of them itself
+		SQLSERVER("SqlServer", "jdbc:sqlserver:", "com.microsoft.sqlserver.jdbc.SQLServerDriver",
+				2098, 1000),
+		MARIA("MariaDB", "jdbc:mariadb:", "org.mariadb.jdbc.Driver", 65535, Integer.MAX_VALUE);
 		private final String driver;
 		private final String classLoader;
 		private final String name;
+		private final int maxParameters;
+		private final int maxRowsPerInsert;
 
-		DatabaseType(String name, String driver, String classLoader) {
+		DatabaseType(String name, String driver, String classLoader, int maxParameters,
+				int maxRowsPerInsert) {
 			this.driver = driver;
 			this.classLoader = classLoader;
 			this.name = name;
+			this.maxParameters = maxParameters;
+			this.maxRowsPerInsert = maxRowsPerInsert;
 		}
 
 		public String getDriver() {
@@ -615,6 +1144,43 @@ public abstract class Database implements AutoCloseable {
 		public String getName() {
 			return name;
 		}
+
+		/**
+		 * @return the maximum amount of bind parameters a single statement may contain
+		 */
+		public int getMaxParameters() {
+			return maxParameters;
+		}
+
+		/**
+		 * @return the maximum amount of rows a single {@code INSERT ... VALUES} may contain
+		 */
+		public int getMaxRowsPerInsert() {
+			return maxRowsPerInsert;
+		}
+
+		/**
+		 * @return how the driver of this type streams large results
+		 */
+		public StreamingProfile getStreamingProfile() {
+			return StreamingProfile.of(this);
+		}
+
+		/**
+		 * Finds the database type matching a driver prefix or driver class
+		 *
+		 * @param driver the jdbc url prefix (jdbc:mysql:)
+		 * @param classLoader the driver class name
+		 * @return the matching type or null if none matches
+		 */
+		public static DatabaseType of(String driver, String classLoader) {
+			for (DatabaseType type : values()) {
+				if (type.classLoader.equals(classLoader) || type.driver.equals(driver)) {
+					return type;
+				}
+			}
+			return null;
+		}
 	}
 
 }
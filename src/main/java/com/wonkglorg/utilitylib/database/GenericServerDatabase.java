@@ -4,14 +4,29 @@ import com.wonkglorg.util.database.response.*;
 import com.wonkglorg.util.database.values.DbName;
 import com.wonkglorg.util.interfaces.functional.checked.CheckedConsumer;
 import com.wonkglorg.util.interfaces.functional.checked.CheckedFunction;
+import com.wonkglorg.utilitylib.database.exceptions.CircuitOpenException;
+import com.wonkglorg.utilitylib.database.pool.ConnectionPool;
+import com.wonkglorg.utilitylib.database.pool.PartitionMetrics;
+import com.wonkglorg.utilitylib.database.pool.PoolMetrics;
+import com.wonkglorg.utilitylib.database.pool.PoolSettings;
+import com.wonkglorg.utilitylib.database.pool.TrackedConnection;
+import com.wonkglorg.utilitylib.database.resilience.CircuitBreaker;
 
 import java.sql.*;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.List;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import java.util.function.Function;
-import java.util.logging.Level;
 
 @SuppressWarnings("unused")
 public class GenericServerDatabase extends Database {
@@ -19,16 +34,100 @@ public class GenericServerDatabase extends Database {
 	//todo rework database class to correctly handle connection strings from different database
 	// types currently quite limited
 	protected ConnectionBuilder builder;
-	private final BlockingQueue<Connection> connectionPool;
-	private DbName databaseName;
-
+	/**
+	 * Drivers already loaded, loading is only needed once per class loader
+	 */
+	private static final Set<String> loadedDrivers = ConcurrentHashMap.newKeySet();
+	/**
+	 * Seconds the circuit breaker trial waits for the database to answer
+	 */
+	private static final int PROBE_TIMEOUT_SECONDS = 5;
+	private final ConnectionPool connectionPool;
+	private final CircuitBreaker circuitBreaker;
+	/**
+	 * The database owning the pool, this instance unless it is a view
+	 */
+	private final GenericServerDatabase owner;
+	private final String partition;
+	private final int priority;
+	private volatile DbName databaseName;
+	/**
+	 * Timeout of every call in nanoseconds covering pool acquisition and execution, 0 for none
+	 */
+	private volatile long timeoutNanos;
+	/**
+	 * Whether {@link #timeoutNanos} was chosen for this view with {@link #withTimeout(Duration)}
+	 * instead of being the database wide timeout
+	 */
+	private volatile boolean callerTimeout;
+	/**
+	 * Point in time all calls must finish by, null for none
+	 */
+	private volatile Instant deadline;
+	/**
+	 * Runs {@link #executeAsync(CheckedFunction)} calls, created on first use by the owner
+	 */
+	private ExecutorService asyncExecutor;
 
+	/**
+	 * Create a new GenericServerDatabase, the initial connections are opened in parallel
+	 *
+	 * @param builder the connection builder
+	 * @param driver the driver name
+	 * @param classLoader the driver class
+	 * @param settings the pool settings
+	 */
 	public GenericServerDatabase(ConnectionBuilder builder, String driver, String classLoader,
-			int poolSize) {
+			PoolSettings settings) {
 		super(driver, classLoader);
 		this.builder = builder;
-		connectionPool = new ArrayBlockingQueue<>(poolSize);
-		initializeConnectionPool(poolSize);
+		this.owner = this;
+		this.partition = ConnectionPool.DEFAULT_PARTITION;
+		this.priority = ConnectionPool.PRIORITY_NORMAL;
+		this.circuitBreaker = new CircuitBreaker(this::probe);
+		loadDriver(classLoader);
+		connectionPool = new ConnectionPool(driver + "-pool", this::createConnection, settings);
+		if (settings.isAwaitWarmUp()) {
+			try {
+				connectionPool.ready().join();
+			} catch (CompletionException e) {
+				connectionPool.close();
+				throw new RuntimeException(e.getCause());
+			}
+		}
+	}
+
+	/**
+	 * Creates a view sharing the pool of another database
+	 *
+	 * @param source the database to share the pool of
+	 * @param partition the pool partition connections are taken from
+	 * @param priority the priority used when waiting for a connection
+	 */
+	protected GenericServerDatabase(GenericServerDatabase source, String partition, int priority) {
+		super(source);
+		if (!source.connectionPool.hasPartition(partition)) {
+			throw new IllegalArgumentException("Connection pool has no partition " + partition);
+		}
+		this.builder = source.builder;
+		this.connectionPool = source.connectionPool;
+		this.circuitBreaker = source.circuitBreaker;
+		this.owner = source.owner;
+		this.partition = partition;
+		this.priority = priority;
+		this.timeoutNanos = source.timeoutNanos;
+		this.callerTimeout = source.callerTimeout;
+		this.deadline = source.deadline;
+	}
+
+	public GenericServerDatabase(ConnectionBuilder builder, DatabaseType databaseType,
+			PoolSettings settings) {
+		this(builder, databaseType.getDriver(), databaseType.getClassLoader(), settings);
+	}
+
+	public GenericServerDatabase(ConnectionBuilder builder, String driver, String classLoader,
+			int poolSize) {
+		this(builder, driver, classLoader, new PoolSettings(poolSize));
 	}
 
 	public GenericServerDatabase(ConnectionBuilder builder, DatabaseType databaseType,
@@ -52,14 +151,248 @@ public class GenericServerDatabase extends Database {
 
 	/**
 	 * @return a connection from the connection pool should be released after use manually
+	 * @throws RuntimeException wrapping a {@link CircuitOpenException} while the circuit breaker is
+	 * open
 	 */
 	@Override
 	public Connection getConnection() {
+		CallDeadline callDeadline = callDeadline();
+		if (!circuitBreaker.allowRequest()) {
+			throw new RuntimeException(new CircuitOpenException(
+					"Circuit breaker is " + circuitBreaker.getState() + ", database unavailable"));
+		}
+		Connection connection;
 		try {
-			return connectionPool.take();
+			long wait = callDeadline.nanoTime() == 0 ? Long.MAX_VALUE
+					: Math.max(0, callDeadline.nanoTime() - System.nanoTime());
+			connection = connectionPool.acquire(partition, priority, wait);
 		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
 			throw new RuntimeException(e);
+		} catch (SQLTimeoutException e) {
+			//an exhausted pool says nothing about the database itself
+			throw new RuntimeException(e);
+		} catch (SQLException | RuntimeException e) {
+			circuitBreaker.recordConnectionFailure();
+			throw e instanceof RuntimeException runtime ? runtime : new RuntimeException(e);
+		}
+		if (callDeadline.nanoTime() != 0 && connection instanceof TrackedConnection tracked) {
+			tracked.setDeadline(callDeadline.nanoTime(), callDeadline.callerSet());
+		}
+		return connection;
+	}
+
+	/**
+	 * @param nanoTime the {@link System#nanoTime()} a call must finish by, 0 if it has no timeout
+	 * @param callerSet true if the deadline comes from {@link #withTimeout(Duration)} or
+	 * {@link #withDeadline(Instant)} rather than the database wide timeout
+	 */
+	private record CallDeadline(long nanoTime, boolean callerSet) {
+		private static final CallDeadline NONE = new CallDeadline(0, false);
+	}
+
+	/**
+	 * @return the deadline of a call starting now
+	 */
+	private CallDeadline callDeadline() {
+		long timeout = timeoutNanos;
+		Instant until = deadline;
+		if (timeout == 0 && until == null) {
+			return CallDeadline.NONE;
+		}
+		long now = System.nanoTime();
+		long remaining = timeout == 0 ? Long.MAX_VALUE : timeout;
+		boolean callerSet = timeout != 0 && callerTimeout;
+		if (until != null) {
+			long untilRemaining = Duration.between(Instant.now(), until).toNanos();
+			if (untilRemaining <= remaining) {
+				remaining = untilRemaining;
+				callerSet = true;
+			}
+		}
+		long callDeadline = now + remaining;
+		//0 means no deadline
+		return new CallDeadline(callDeadline == 0 ? 1 : callDeadline, callerSet);
+	}
+
+	/**
+	 * Sets the timeout of every call of this database, it covers waiting for a pooled connection and
+	 * the statements of the call, which get the remaining time as query timeout. Views created
+	 * afterwards inherit it. Calls running into this timeout count as failures of the
+	 * {@link CircuitBreaker}, unlike calls missing a timeout or deadline set through a view.
+	 *
+	 * @param timeout the timeout, {@link Duration#ZERO} for none
+	 */
+	public void setTimeout(Duration timeout) {
+		if (timeout.isNegative()) {
+			throw new IllegalArgumentException("Timeout must not be negative");
 		}
+		this.timeoutNanos = timeout.toNanos();
+	}
+
+	public Duration getTimeout() {
+		return Duration.ofNanos(timeoutNanos);
+	}
+
+	/**
+	 * Creates a view of this database whose calls each have the given timeout
+	 *
+	 * @param timeout the timeout per call, {@link Duration#ZERO} for none
+	 * @return the view
+	 * @see #setTimeout(Duration)
+	 */
+	public GenericServerDatabase withTimeout(Duration timeout) {
+		GenericServerDatabase view = new GenericServerDatabase(this, partition, priority);
+		view.setTimeout(timeout);
+		view.callerTimeout = true;
+		return view;
+	}
+
+	/**
+	 * Creates a view of this database whose calls must all finish by the deadline, for example to
+	 * pass on the time left of a request handled by several calls. A timeout still applies per call
+	 * if it ends earlier.
+	 *
+	 * @param deadline the point in time to finish by
+	 * @return the view
+	 */
+	public GenericServerDatabase withDeadline(Instant deadline) {
+		GenericServerDatabase view = new GenericServerDatabase(this, partition, priority);
+		view.deadline = deadline;
+		return view;
+	}
+
+	/**
+	 * Runs a call on a separate thread. Cancelling the returned future cancels the running statements
+	 * with {@link Statement#cancel()} or stops waiting for a connection, the connection is rolled back
+	 * and reset before it returns to the pool.
+	 *
+	 * @param query the call
+	 * @return a future completing with the result or the error of the call
+	 */
+	public <T> CompletableFuture<DatabaseSingleObjResponse<T>> executeAsync(
+			CheckedFunction<Connection, T> query) {
+		return executeAsync(query, owner.asyncExecutor());
+	}
+
+	/**
+	 * Runs a call on the given executor
+	 *
+	 * @param query the call
+	 * @param executor runs the call, it blocks while waiting for the connection and the database
+	 * @return a future completing with the result or the error of the call
+	 * @see #executeAsync(CheckedFunction)
+	 */
+	public <T> CompletableFuture<DatabaseSingleObjResponse<T>> executeAsync(
+			CheckedFunction<Connection, T> query, Executor executor) {
+		AsyncCall<T> call = new AsyncCall<>();
+		executor.execute(() -> {
+			if (!call.startAcquire()) {
+				return;
+			}
+			Connection connection;
+			try {
+				connection = getConnection();
+			} catch (RuntimeException e) {
+				call.acquired(null);
+				call.complete(new DatabaseSingleObjResponse<>(acquireFailure(e), null));
+				return;
+			}
+			if (!call.acquired(connection)) {
+				releaseConnection(connection);
+				return;
+			}
+			DatabaseSingleObjResponse<T> response;
+			try {
+				response = run(connection,
+						c -> new DatabaseSingleObjResponse<>(null, query.apply(c)),
+						e -> new DatabaseSingleObjResponse<>(e, null));
+			} finally {
+				//no cancel may reach the connection once it is back in the pool
+				call.finished();
+				releaseConnection(connection);
+			}
+			call.complete(response);
+		});
+		return call;
+	}
+
+	private synchronized ExecutorService asyncExecutor() {
+		if (asyncExecutor == null) {
+			AtomicInteger threadCount = new AtomicInteger();
+			asyncExecutor = Executors.newCachedThreadPool(runnable -> {
+				Thread thread = new Thread(runnable, driver + "-async-" + threadCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		return asyncExecutor;
+	}
+
+	/**
+	 * @return the circuit breaker shared by this database and its views
+	 */
+	public CircuitBreaker getCircuitBreaker() {
+		return circuitBreaker;
+	}
+
+	/**
+	 * Checks the database with a new connection outside of the pool, used as the trial of the
+	 * circuit breaker
+	 */
+	private boolean probe() {
+		try (Connection connection = DriverManager.getConnection(builder.build())) {
+			return connection.isValid(PROBE_TIMEOUT_SECONDS);
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	@Override
+	public boolean supportsParallelExecution() {
+		return true;
+	}
+
+	/**
+	 * @return a future completing once the initial connections of the pool are open
+	 */
+	public CompletableFuture<Void> ready() {
+		return connectionPool.ready();
+	}
+
+	public ConnectionPool getConnectionPool() {
+		return connectionPool;
+	}
+
+	/**
+	 * Creates a view of this database taking its connections from a partition of the shared pool,
+	 * partitions are configured with {@link PoolSettings#partition(String, int)}. Closing the view
+	 * does not close the pool.
+	 *
+	 * @param partition the name of the partition
+	 * @return the view
+	 */
+	public GenericServerDatabase partition(String partition) {
+		return new GenericServerDatabase(this, partition, priority);
+	}
+
+	/**
+	 * Creates a view of this database whose calls are served before calls with a lower priority
+	 * when waiting for a connection. Closing the view does not close the pool.
+	 *
+	 * @param priority the priority, see {@link ConnectionPool#PRIORITY_HIGH}
+	 * @return the view
+	 */
+	public GenericServerDatabase withPriority(int priority) {
+		return new GenericServerDatabase(this, partition, priority);
+	}
+
+	public String getPartition() {
+		return partition;
+	}
+
+	public int getPriority() {
+		return priority;
 	}
 
 	/**
@@ -68,89 +401,120 @@ public class GenericServerDatabase extends Database {
 	 * @param connection the connection to release
 	 */
 	public void releaseConnection(Connection connection) {
-		connectionPool.offer(connection);
+		connectionPool.release(connection);
 	}
 
 
 	/**
-	 * Resize the connection pool
+	 * Resize the connection pool without blocking, connections in use above the new size are closed
+	 * when they are released
+	 *
+	 * @param newSize the new size of the connection pool
+	 * @return a future completing once the connections added by growing are open
+	 */
+	public CompletableFuture<Void> resizePoolAsync(int newSize) {
+		return connectionPool.resize(newSize);
+	}
+
+	/**
+	 * Resize the connection pool and wait until the connections added by growing are open
 	 *
 	 * @param newSize the new size of the connection pool
+	 * @throws InterruptedException if interrupted while waiting
+	 * @deprecated blocks the caller, use {@link #resizePoolAsync(int)}
 	 */
+	@Deprecated
 	public void resizePool(int newSize) throws InterruptedException {
-		if (newSize < 1) {
-			throw new IllegalArgumentException("Pool size must be at least 1");
-		}
-		synchronized (connectionPool) {
-			int currentSize = connectionPool.size();
-			if (newSize < currentSize) {
-				for (int i = newSize; i < currentSize; i++) {
-					try {
-						connectionPool.take().close();
-					} catch (SQLException e) {
-						logger.log(Level.SEVERE, e.getMessage(), e);
-					}
-				}
-			} else if (newSize > currentSize) {
-				for (int i = currentSize; i < newSize; i++) {
-					connectionPool.add(createConnection());
-				}
-			}
+		try {
+			resizePoolAsync(newSize).get();
+		} catch (ExecutionException e) {
+			throw e.getCause() instanceof RuntimeException runtime ? runtime
+					: new RuntimeException(e.getCause());
 		}
 	}
 
+	/**
+	 * @return a snapshot of the wait times of the partition used by this database
+	 */
+	public PartitionMetrics getPartitionMetrics() {
+		return connectionPool.getPartitionMetrics(partition);
+	}
 
 	/**
-	 * Disconnect from the database and close all connections
+	 * @return a snapshot of the connection pool size and wait times
 	 */
-	@Override
-	public void disconnect() {
-		for (Connection connection : connectionPool) {
-			try {
-				connection.close();
-			} catch (SQLException e) {
-				System.out.println("Error closing connection: " + e.getMessage());
-			}
-		}
+	public PoolMetrics getPoolMetrics() {
+		return connectionPool.getMetrics();
 	}
 
 
 	/**
-	 * Initialize the connection pool
-	 *
-	 * @param poolSize the size of the connection pool
+	 * Disconnect from the database and close all connections, does nothing for views
 	 */
-	private void initializeConnectionPool(int poolSize) {
-		for (int i = 0; i < poolSize; i++) {
-			connectionPool.add(createConnection());
+	@Override
+	public void disconnect() {
+		if (owner == this) {
+			connectionPool.close();
+			errorReporter.flush();
+			synchronized (this) {
+				if (asyncExecutor != null) {
+					asyncExecutor.shutdownNow();
+				}
+			}
 		}
 	}
 
 
 	/**
-	 * Use a specific database for a connection
+	 * Use a specific database for a connection, does nothing if a pooled connection already uses it.
+	 * Fails on databases whose driver can not switch the catalog of a connection (like PostgreSQL).
 	 *
 	 * @param connection the connection to use the database on
 	 * @param databaseName the name of the database to use
 	 */
 	public void useDatabase(Connection connection, DbName databaseName) {
-		String name = sanitize(databaseName.toString());
-		try (Statement statement = connection.createStatement()) {
-			statement.execute("USE " + name);
+		try {
+			connection.setCatalog(sanitize(databaseName.toString()));
 		} catch (SQLException e) {
 			throw new RuntimeException(e);
 		}
 	}
 
 	/**
-	 * Use a specific database for all connections
+	 * Use a specific database for all connections, idle connections switch right away, connections
+	 * in use switch when they are released and connections opened later start with it
 	 *
 	 * @param databaseName the name of the database to use
 	 */
 	public void useDatabaseForAllConnections(String databaseName) {
-		this.databaseName = new DbName(databaseName);
-		for (Connection connection : connectionPool) {
-			useDatabase(connection, this.databaseName);
+		DbName name = new DbName(databaseName);
+		String catalog = sanitize(name.toString());
+		owner.databaseName = name;
+		connectionPool.forEachInUse(connection -> {
+			if (connection instanceof TrackedConnection tracked) {
+				tracked.setDefaultCatalog(catalog);
+			}
+		});
+		//switch outside the pool lock, callers meanwhile wait for or open other connections
+		RuntimeException failure = null;
+		for (Connection connection : connectionPool.takeIdle()) {
+			boolean switched = false;
+			try {
+				if (connection instanceof TrackedConnection tracked) {
+					tracked.setDefaultCatalog(catalog);
+				}
+				useDatabase(connection, name);
+				switched = true;
+			} catch (RuntimeException e) {
+				if (failure == null) {
+					failure = e;
+				}
+			} finally {
+				connectionPool.returnIdle(connection, switched);
+			}
+		}
+		if (failure != null) {
+			throw failure;
 		}
 	}
 
@@ -159,16 +523,32 @@ public class GenericServerDatabase extends Database {
 	 *
 	 * @return a new connection
 	 */
-	private Connection createConnection() {
-		try {
-			Class.forName(getClassLoader());
-			return DriverManager.getConnection(builder.build());
+	private Connection createConnection() throws SQLException {
+		TrackedConnection connection = new TrackedConnection(
+				DriverManager.getConnection(builder.build()));
+		DbName name = databaseName;
+		if (name != null) {
+			useDatabase(connection, name);
+			connection.captureDefaults();
+		}
+		return connection;
+	}
 
-		} catch (Exception e) {
-			disconnect();
+	/**
+	 * Loads the driver class once, drivers register themselves with the {@link DriverManager}
+	 *
+	 * @param classLoader the driver class
+	 */
+	private static void loadDriver(String classLoader) {
+		if (loadedDrivers.contains(classLoader)) {
+			return;
+		}
+		try {
+			Class.forName(classLoader);
+			loadedDrivers.add(classLoader);
+		} catch (ClassNotFoundException e) {
 			throw new RuntimeException(e);
 		}
-
 	}
 
 	/**
@@ -192,14 +572,7 @@ public class GenericServerDatabase extends Database {
 
 	public DatabaseUpdateResponse executeUpdate(CheckedFunction<Connection, PreparedStatement> query,
 			CheckedFunction<PreparedStatement, Integer> result) {
-		Connection connection = getConnection();
-		try (PreparedStatement resultSet = query.apply(connection)) {
-			return new DatabaseUpdateResponse(null, result.apply(resultSet));
-		} catch (Exception e) {
-			return new DatabaseUpdateResponse(e, -1);
-		} finally {
-			releaseConnection(connection);
-		}
+		return executeUpdateUnchecked(query, result);
 	}
 
 	@Override
@@ -237,144 +610,224 @@ public class GenericServerDatabase extends Database {
 		return executeSingleObjQueryUnchecked(query, adapter);
 	}
 
-	@Override
-	public DatabaseResponse executeUnchecked(Consumer<Connection> query) {
-		Connection connection = getConnection();
+	/**
+	 * Runs an action on a pooled connection, records its outcome with the circuit breaker and
+	 * releases the connection
+	 *
+	 * @param action the action to run
+	 * @param onError creates the response for a failed action
+	 * @return the response of the action or the error response
+	 */
+	protected <R> R withConnection(Function<Connection, R> action, Function<Exception, R> onError) {
+		Connection connection;
 		try {
-			query.accept(connection);
-			return new DatabaseResponse(null);
-		} catch (Exception e) {
-			logger.log(Level.SEVERE, e.getMessage(), e);
-			return new DatabaseResponse(e);
+			connection = getConnection();
+		} catch (RuntimeException e) {
+			return onError.apply(acquireFailure(e));
+		}
+		try {
+			return run(connection, action, onError);
 		} finally {
 			releaseConnection(connection);
 		}
 	}
 
-	@Override
-	public DatabaseUpdateResponse executeUpdateUnchecked(Function<Connection, Integer> query) {
-		Connection connection = getConnection();
+	/**
+	 * Runs an action on an acquired connection and records its outcome with the circuit breaker
+	 */
+	private <R> R run(Connection connection, Function<Connection, R> action,
+			Function<Exception, R> onError) {
 		try {
-			return new DatabaseUpdateResponse(null, query.apply(connection));
+			R response = action.apply(connection);
+			circuitBreaker.recordSuccess();
+			return response;
 		} catch (Exception e) {
-			logger.log(Level.SEVERE, e.getMessage(), e);
-			return new DatabaseUpdateResponse(e, -1);
-		} finally {
-			releaseConnection(connection);
+			if (isCallerTimeout(connection, e)) {
+				circuitBreaker.recordSuccess();
+			} else {
+				circuitBreaker.recordFailure(e);
+			}
+			errorReporter.report(e);
+			return onError.apply(e);
+		}
+	}
+
+	/**
+	 * @return true if the error is a timeout resulting from the deadline the caller set for the call
+	 */
+	private static boolean isCallerTimeout(Connection connection, Exception error) {
+		if (!(connection instanceof TrackedConnection tracked) || !tracked.isCallerDeadline()
+				|| CircuitBreaker.isConnectionFailure(error)) {
+			return false;
 		}
+		for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+			if (cause instanceof SQLTimeoutException) {
+				return true;
+			}
+			if (cause.getCause() == cause) {
+				break;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return the error to respond with if no connection could be acquired, rejections of the open
+	 * circuit breaker are not logged
+	 */
+	private Exception acquireFailure(RuntimeException e) {
+		if (e.getCause() instanceof CircuitOpenException open) {
+			return open;
+		}
+		errorReporter.report(e);
+		return e;
+	}
+
+	@Override
+	public DatabaseResponse executeUnchecked(Consumer<Connection> query) {
+		return withConnection(connection -> {
+			query.accept(connection);
+			return new DatabaseResponse(null);
+		}, DatabaseResponse::new);
+	}
+
+	@Override
+	public DatabaseUpdateResponse executeUpdateUnchecked(Function<Connection, Integer> query) {
+		return withConnection(connection -> new DatabaseUpdateResponse(null, query.apply(connection)),
+				e -> new DatabaseUpdateResponse(e, -1));
 	}
 
 	@Override
 	public DatabaseUpdateResponse executeUpdateUnchecked(
 			Function<Connection, PreparedStatement> query, Function<PreparedStatement, Integer> result) {
-		Connection connection = getConnection();
-		PreparedStatement statement = null;
-		try {
-			statement = query.apply(connection);
-			return new DatabaseUpdateResponse(null, result.apply(statement));
-		} catch (Exception e) {
-			logger.log(Level.SEVERE, e.getMessage(), e);
-			return new DatabaseUpdateResponse(e, -1);
-		} finally {
-			if (statement != null) {
-				try {
-					statement.close();
-				} catch (SQLException e) {
-					logger.log(Level.SEVERE, e.getMessage(), e);
-				}
+		return withConnection(connection -> {
+			PreparedStatement statement = query.apply(connection);
+			try {
+				return new DatabaseUpdateResponse(null, result.apply(statement));
+			} finally {
+				closeStatement(statement);
 			}
-			releaseConnection(connection);
-		}
+		}, e -> new DatabaseUpdateResponse(e, -1));
 	}
 
 	@Override
 	public DatabaseResultSetResponse executeQueryUnchecked(Function<Connection, ResultSet> query) {
-		Connection connection = getConnection();
-		try {
-			return new DatabaseResultSetResponse(null, query.apply(connection));
-		} catch (Exception e) {
-			logger.log(Level.SEVERE, e.getMessage(), e);
-			return new DatabaseResultSetResponse(e, null);
-		} finally {
-			releaseConnection(connection);
-		}
+		return withConnection(connection -> new DatabaseResultSetResponse(null, query.apply(connection)),
+				e -> new DatabaseResultSetResponse(e, null));
 	}
 
 	@Override
 	public DatabaseResultSetResponse executeQueryUnchecked(
 			Function<Connection, PreparedStatement> query,
 			Function<PreparedStatement, ResultSet> result) {
-		Connection connection = getConnection();
-		try (var statement = query.apply(connection)) {
-			return new DatabaseResultSetResponse(null, result.apply(statement));
-		} catch (Exception e) {
-			logger.log(Level.SEVERE, e.getMessage(), e);
-			return new DatabaseResultSetResponse(e, null);
-		} finally {
-			releaseConnection(connection);
-		}
+		return withConnection(connection -> {
+			PreparedStatement statement = query.apply(connection);
+			try {
+				return new DatabaseResultSetResponse(null, result.apply(statement));
+			} finally {
+				closeStatement(statement);
+			}
+		}, e -> new DatabaseResultSetResponse(e, null));
 	}
 
 	@Override
 	public <T> DatabaseObjResponse<T> executeObjQueryUnchecked(Function<Connection, List<T>> query) {
-		Connection connection = getConnection();
-		try {
-			return new DatabaseObjResponse<>(null, query.apply(connection));
-		} catch (Exception e) {
-			logger.log(Level.SEVERE, e.getMessage(), e);
-			return new DatabaseObjResponse<>(e, null);
-		} finally {
-			releaseConnection(connection);
-		}
+		return withConnection(connection -> new DatabaseObjResponse<>(null, query.apply(connection)),
+				e -> new DatabaseObjResponse<>(e, null));
 	}
 
 	public <T> DatabaseObjResponse<T> executeObjQueryUnchecked(Function<Connection, ResultSet> query,
 			Function<ResultSet, List<T>> adapter) {
-		Connection connection = getConnection();
-		ResultSet resultSet = null;
-		try {
-			resultSet = query.apply(connection);
-
-			List<T> results = adapter.apply(resultSet);
-			return new DatabaseObjResponse<>(null, results);
-		} catch (Exception e) {
-			logger.log(Level.SEVERE, e.getMessage(), e);
-			return new DatabaseObjResponse<>(e, null);
-		} finally {
-			closeResources(resultSet);
-			releaseConnection(connection);
-		}
+		return withConnection(connection -> {
+			ResultSet resultSet = query.apply(connection);
+			try {
+				return new DatabaseObjResponse<>(null, adapter.apply(resultSet));
+			} finally {
+				closeResources(resultSet);
+			}
+		}, e -> new DatabaseObjResponse<>(e, null));
 	}
 
 	@Override
 	public <T> DatabaseSingleObjResponse<T> executeSingleObjQueryUnchecked(
 			Function<Connection, T> adapter) {
-		Connection connection = getConnection();
-		try {
-			return new DatabaseSingleObjResponse<>(null, adapter.apply(connection));
-		} catch (Exception e) {
-			logger.log(Level.SEVERE, e.getMessage(), e);
-			return new DatabaseSingleObjResponse<>(e, null);
-		} finally {
-			releaseConnection(connection);
-		}
+		return withConnection(
+				connection -> new DatabaseSingleObjResponse<>(null, adapter.apply(connection)),
+				e -> new DatabaseSingleObjResponse<>(e, null));
 	}
 
 	@Override
 	public <T> DatabaseSingleObjResponse<T> executeSingleObjQueryUnchecked(
 			Function<Connection, ResultSet> query, Function<ResultSet, T> adapter) {
-		Connection connection = getConnection();
-		ResultSet resultSet = null;
-		try {
-			resultSet = query.apply(connection);
-			T results = adapter.apply(resultSet);
-			return new DatabaseSingleObjResponse<>(null, results);
-		} catch (Exception e) {
-			logger.log(Level.SEVERE, e.getMessage(), e);
-			return new DatabaseSingleObjResponse<>(e, null);
-		} finally {
-			closeResources(resultSet);
-			releaseConnection(connection);
+		return withConnection(connection -> {
+			ResultSet resultSet = query.apply(connection);
+			try {
+				return new DatabaseSingleObjResponse<>(null, adapter.apply(resultSet));
+			} finally {
+				closeResources(resultSet);
+			}
+		}, e -> new DatabaseSingleObjResponse<>(e, null));
+	}
+
+	private void closeStatement(PreparedStatement statement) {
+		if (statement != null) {
+			try {
+				statement.close();
+			} catch (SQLException e) {
+				errorReporter.report(e);
+			}
+		}
+	}
+
+	/**
+	 * Future of an async call that cancels the call's statements or its wait for a connection
+	 */
+	private static final class AsyncCall<T> extends CompletableFuture<DatabaseSingleObjResponse<T>> {
+		private Thread runner;
+		private Connection connection;
+
+		/**
+		 * @return false if the call was cancelled before it started
+		 */
+		private synchronized boolean startAcquire() {
+			if (isDone()) {
+				return false;
+			}
+			runner = Thread.currentThread();
+			return true;
+		}
+
+		/**
+		 * @return false if the call was cancelled while waiting for the connection
+		 */
+		private synchronized boolean acquired(Connection connection) {
+			runner = null;
+			if (isCancelled()) {
+				//clear the interrupt used to stop waiting, the thread belongs to the executor
+				Thread.interrupted();
+				return false;
+			}
+			this.connection = connection;
+			return true;
+		}
+
+		private synchronized void finished() {
+			connection = null;
+		}
+
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			boolean cancelled = super.cancel(mayInterruptIfRunning);
+			if (cancelled) {
+				synchronized (this) {
+					if (runner != null) {
+						runner.interrupt();
+					} else if (connection instanceof TrackedConnection tracked) {
+						tracked.cancel();
+					}
+				}
+			}
+			return cancelled;
 		}
 	}
 }
@@ -0,0 +1,316 @@
+package com.wonkglorg.utilitylib.database;
+
+import com.wonkglorg.util.database.response.*;
+import com.wonkglorg.util.interfaces.functional.checked.CheckedConsumer;
+import com.wonkglorg.util.interfaces.functional.checked.CheckedFunction;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Splits traffic between a primary database and any amount of read replicas. Queries
+ * ({@code executeQuery}, {@code executeObjQuery}, {@code executeSingleObjQuery}) are sent to a
+ * replica, everything else (updates, {@code execute} and {@link #getConnection()} for transactions)
+ * goes to the primary.
+ * <p>
+ * After a thread writes, its reads are sent to the primary for the configured stickiness window
+ * so it always sees its own writes even if the replicas lag behind.
+ * <p>
+ * Any {@link Database} can be used as primary or replica, for local testing multiple
+ * {@link SqliteDatabase} files work as well as server pools.
+ *
+ * @author Wonkglorg
+ */
+@SuppressWarnings("unused")
+public class RoutingDatabase extends Database {
+	private final Database primary;
+	private final List<Database> replicas;
+	private final ReplicaSelection selection;
+	private final long stickinessNanos;
+	private final AtomicInteger nextReplica = new AtomicInteger();
+	private final AtomicIntegerArray activeReads;
+	private final ThreadLocal<Long> lastWrite = new ThreadLocal<>();
+
+	/**
+	 * How a replica is chosen for a read
+	 */
+	public enum ReplicaSelection {
+		/**
+		 * Replicas take turns
+		 */
+		ROUND_ROBIN,
+		/**
+		 * The replica with the fewest reads currently running through this router
+		 */
+		LEAST_BUSY
+	}
+
+	/**
+	 * @param primary the database receiving all writes
+	 * @param replicas the databases receiving reads, if empty all reads go to the primary
+	 * @param selection how replicas are chosen
+	 * @param stickiness how long reads of a thread stay on the primary after it wrote (0 to
+	 * disable)
+	 */
+	public RoutingDatabase(Database primary, List<? extends Database> replicas,
+			ReplicaSelection selection, Duration stickiness) {
+		super(primary.getDriver(), primary.getClassLoader());
+		this.primary = primary;
+		this.replicas = List.copyOf(replicas);
+		this.selection = selection;
+		this.stickinessNanos = stickiness.toNanos();
+		this.activeReads = new AtomicIntegerArray(this.replicas.size());
+	}
+
+	/**
+	 * Creates a round-robin router with a stickiness window of 1 second
+	 *
+	 * @param primary the database receiving all writes
+	 * @param replicas the databases receiving reads
+	 */
+	public RoutingDatabase(Database primary, List<? extends Database> replicas) {
+		this(primary, replicas, ReplicaSelection.ROUND_ROBIN, Duration.ofSeconds(1));
+	}
+
+	public Database getPrimary() {
+		return primary;
+	}
+
+	public List<Database> getReplicas() {
+		return replicas;
+	}
+
+	/**
+	 * Marks the current thread as having written, its reads go to the primary for the stickiness
+	 * window. Called automatically for every write made through this router, only needed when
+	 * writing through a connection obtained elsewhere.
+	 */
+	public void markWrite() {
+		if (stickinessNanos > 0) {
+			lastWrite.set(System.nanoTime());
+		}
+	}
+
+	/**
+	 * @return true if reads of the current thread are pinned to the primary
+	 */
+	public boolean isSticky() {
+		Long written = lastWrite.get();
+		if (written == null) {
+			return false;
+		}
+		if (System.nanoTime() - written < stickinessNanos) {
+			return true;
+		}
+		lastWrite.remove();
+		return false;
+	}
+
+	/**
+	 * @return the amount of reads currently running on each replica through this router
+	 */
+	public int[] getActiveReads() {
+		int[] result = new int[activeReads.length()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = activeReads.get(i);
+		}
+		return result;
+	}
+
+	private <R> R read(Function<Database, R> call) {
+		if (replicas.isEmpty() || isSticky()) {
+			return call.apply(primary);
+		}
+		int index = selectReplica();
+		activeReads.incrementAndGet(index);
+		try {
+			return call.apply(replicas.get(index));
+		} finally {
+			activeReads.decrementAndGet(index);
+		}
+	}
+
+	private <R> R write(Function<Database, R> call) {
+		try {
+			return call.apply(primary);
+		} finally {
+			markWrite();
+		}
+	}
+
+	private int selectReplica() {
+		if (selection == ReplicaSelection.ROUND_ROBIN) {
+			return Math.floorMod(nextReplica.getAndIncrement(), replicas.size());
+		}
+		//start at a rotating offset so ties do not always land on the first replica
+		int start = Math.floorMod(nextReplica.getAndIncrement(), replicas.size());
+		int best = start;
+		int bestActive = activeReads.get(start);
+		for (int i = 1; i < replicas.size() && bestActive > 0; i++) {
+			int index = (start + i) % replicas.size();
+			int active = activeReads.get(index);
+			if (active < bestActive) {
+				best = index;
+				bestActive = active;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * @return a connection of the primary, anything done with it counts as a write. Give it back with
+	 * {@link #releaseConnection(Connection)} once done.
+	 */
+	@Override
+	public Connection getConnection() {
+		markWrite();
+		return primary.getConnection();
+	}
+
+	/**
+	 * Gives a connection from {@link #getConnection()} back to the pool of the primary, does nothing
+	 * if the primary is not pooled and keeps its connection open
+	 *
+	 * @param connection the connection to release
+	 */
+	public void releaseConnection(Connection connection) {
+		if (primary instanceof GenericServerDatabase pooled) {
+			pooled.releaseConnection(connection);
+		}
+	}
+
+	@Override
+	public boolean supportsParallelExecution() {
+		if (!primary.supportsParallelExecution()) {
+			return false;
+		}
+		for (Database replica : replicas) {
+			if (!replica.supportsParallelExecution()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public void disconnect() {
+		primary.disconnect();
+		for (Database replica : replicas) {
+			replica.disconnect();
+		}
+	}
+
+	@Override
+	public void close() {
+		disconnect();
+	}
+
+	@Override
+	public DatabaseResponse execute(CheckedConsumer<Connection> query) {
+		return write(database -> database.execute(query));
+	}
+
+	@Override
+	public DatabaseUpdateResponse executeUpdate(CheckedFunction<Connection, Integer> query) {
+		return write(database -> database.executeUpdate(query));
+	}
+
+	@Override
+	public DatabaseUpdateResponse executeUpdate(CheckedFunction<Connection, PreparedStatement> query,
+			CheckedFunction<PreparedStatement, Integer> result) {
+		return write(database -> database.executeUpdate(query, result));
+	}
+
+	@Override
+	public DatabaseResultSetResponse executeQuery(CheckedFunction<Connection, ResultSet> query) {
+		return read(database -> database.executeQuery(query));
+	}
+
+	@Override
+	public DatabaseResultSetResponse executeQuery(
+			CheckedFunction<Connection, PreparedStatement> query,
+			CheckedFunction<PreparedStatement, ResultSet> result) {
+		return read(database -> database.executeQuery(query, result));
+	}
+
+	@Override
+	public <T> DatabaseObjResponse<T> executeObjQuery(CheckedFunction<Connection, List<T>> adapter) {
+		return read(database -> database.executeObjQuery(adapter));
+	}
+
+	@Override
+	public <T> DatabaseObjResponse<T> executeObjQuery(CheckedFunction<Connection, ResultSet> query,
+			CheckedFunction<ResultSet, List<T>> result) {
+		return read(database -> database.executeObjQuery(query, result));
+	}
+
+	@Override
+	public <T> DatabaseSingleObjResponse<T> executeSingleObjQuery(
+			CheckedFunction<Connection, T> adapter) {
+		return read(database -> database.executeSingleObjQuery(adapter));
+	}
+
+	@Override
+	public <T> DatabaseSingleObjResponse<T> executeSingleObjQuery(
+			CheckedFunction<Connection, ResultSet> query, CheckedFunction<ResultSet, T> adapter) {
+		return read(database -> database.executeSingleObjQuery(query, adapter));
+	}
+
+	@Override
+	public DatabaseResponse executeUnchecked(Consumer<Connection> query) {
+		return write(database -> database.executeUnchecked(query));
+	}
+
+	@Override
+	public DatabaseUpdateResponse executeUpdateUnchecked(Function<Connection, Integer> query) {
+		return write(database -> database.executeUpdateUnchecked(query));
+	}
+
+	@Override
+	public DatabaseUpdateResponse executeUpdateUnchecked(
+			Function<Connection, PreparedStatement> query, Function<PreparedStatement, Integer> result) {
+		return write(database -> database.executeUpdateUnchecked(query, result));
+	}
+
+	@Override
+	public DatabaseResultSetResponse executeQueryUnchecked(Function<Connection, ResultSet> query) {
+		return read(database -> database.executeQueryUnchecked(query));
+	}
+
+	@Override
+	public DatabaseResultSetResponse executeQueryUnchecked(
+			Function<Connection, PreparedStatement> query,
+			Function<PreparedStatement, ResultSet> result) {
+		return read(database -> database.executeQueryUnchecked(query, result));
+	}
+
+	@Override
+	public <T> DatabaseObjResponse<T> executeObjQueryUnchecked(Function<Connection, List<T>> query) {
+		return read(database -> database.executeObjQueryUnchecked(query));
+	}
+
+	@Override
+	public <T> DatabaseObjResponse<T> executeObjQueryUnchecked(Function<Connection, ResultSet> query,
+			Function<ResultSet, List<T>> adapter) {
+		return read(database -> database.executeObjQueryUnchecked(query, adapter));
+	}
+
+	@Override
+	public <T> DatabaseSingleObjResponse<T> executeSingleObjQueryUnchecked(
+			Function<Connection, T> adapter) {
+		return read(database -> database.executeSingleObjQueryUnchecked(adapter));
+	}
+
+	@Override
+	public <T> DatabaseSingleObjResponse<T> executeSingleObjQueryUnchecked(
+			Function<Connection, ResultSet> query, Function<ResultSet, T> adapter) {
+		return read(database -> database.executeSingleObjQueryUnchecked(query, adapter));
+	}
+}
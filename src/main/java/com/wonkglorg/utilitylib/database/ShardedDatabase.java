@@ -0,0 +1,332 @@
+package com.wonkglorg.utilitylib.database;
+
+import com.wonkglorg.util.database.response.*;
+import com.wonkglorg.util.interfaces.functional.checked.CheckedConsumer;
+import com.wonkglorg.util.interfaces.functional.checked.CheckedFunction;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Spreads data over multiple {@link Database}s by key. Operations for a single key are routed to
+ * the one shard owning it, queries over all shards run in parallel on the shards' own connections
+ * and their results are merged.
+ * <p>
+ * Shards can be any database, {@link SqliteDatabase} files and {@link GenericServerDatabase} pools
+ * alike. The shard function must stay the same for the lifetime of the data, changing it or the
+ * amount of shards requires moving the data.
+ *
+ * @param <K> the type of the shard key
+ * @author Wonkglorg
+ */
+@SuppressWarnings("unused")
+public class ShardedDatabase<K> implements AutoCloseable {
+	private final List<Database> shards;
+	private final ShardFunction<K> shardFunction;
+	private final ExecutorService executor;
+	private final boolean ownsExecutor;
+
+	/**
+	 * Decides which shard owns a key
+	 *
+	 * @param <K> the type of the key
+	 */
+	@FunctionalInterface
+	public interface ShardFunction<K> {
+		/**
+		 * @param key the key
+		 * @param shardCount the amount of shards
+		 * @return the index of the shard owning the key (0 to shardCount - 1)
+		 */
+		int shardFor(K key, int shardCount);
+
+		/**
+		 * Distributes keys by their hash, uuids use all 128 bits instead of {@link UUID#hashCode()}
+		 */
+		static <K> ShardFunction<K> hash() {
+			return (key, shardCount) -> {
+				long hash;
+				if (key instanceof UUID uuid) {
+					hash = uuid.getMostSignificantBits() * 31 + uuid.getLeastSignificantBits();
+				} else {
+					hash = key.hashCode();
+				}
+				//spreads sequential hashes over all shards
+				hash *= 0x9E3779B97F4A7C15L;
+				return (int) Math.floorMod(hash ^ (hash >>> 32), (long) shardCount);
+			};
+		}
+
+		/**
+		 * Distributes keys by range, keys below {@code upperBounds[0]} go to shard 0, keys below
+		 * {@code upperBounds[1]} to shard 1 and so on, everything above the last bound goes to the
+		 * last shard. Requires one bound less than there are shards.
+		 *
+		 * @param upperBounds the exclusive upper bounds in ascending order
+		 * @param comparator the key order
+		 */
+		static <K> ShardFunction<K> range(List<K> upperBounds, Comparator<? super K> comparator) {
+			List<K> bounds = List.copyOf(upperBounds);
+			return (key, shardCount) -> {
+				if (bounds.size() != shardCount - 1) {
+					throw new IllegalStateException(
+							"Range sharding over " + shardCount + " shards needs " + (shardCount - 1)
+									+ " bounds but got " + bounds.size());
+				}
+				int low = 0;
+				int high = bounds.size();
+				while (low < high) {
+					int middle = (low + high) >>> 1;
+					if (comparator.compare(key, bounds.get(middle)) < 0) {
+						high = middle;
+					} else {
+						low = middle + 1;
+					}
+				}
+				return low;
+			};
+		}
+	}
+
+	/**
+	 * @param shards the shards in a fixed order
+	 * @param shardFunction decides which shard owns a key
+	 * @param executor runs the per shard queries of fan out operations
+	 */
+	public ShardedDatabase(List<? extends Database> shards, ShardFunction<K> shardFunction,
+			ExecutorService executor) {
+		if (shards.isEmpty()) {
+			throw new IllegalArgumentException("At least one shard is required");
+		}
+		this.shards = List.copyOf(shards);
+		this.shardFunction = shardFunction;
+		this.executor = executor;
+		this.ownsExecutor = false;
+	}
+
+	/**
+	 * Creates a sharded database using one thread per shard for fan out operations
+	 *
+	 * @param shards the shards in a fixed order
+	 * @param shardFunction decides which shard owns a key
+	 */
+	public ShardedDatabase(List<? extends Database> shards, ShardFunction<K> shardFunction) {
+		if (shards.isEmpty()) {
+			throw new IllegalArgumentException("At least one shard is required");
+		}
+		this.shards = List.copyOf(shards);
+		this.shardFunction = shardFunction;
+		AtomicInteger threadCount = new AtomicInteger();
+		ThreadFactory factory = runnable -> {
+			Thread thread = new Thread(runnable, "ShardedDatabase-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+		this.executor = Executors.newFixedThreadPool(this.shards.size(), factory);
+		this.ownsExecutor = true;
+	}
+
+	public List<Database> getShards() {
+		return shards;
+	}
+
+	/**
+	 * @param key the key
+	 * @return the index of the shard owning the key
+	 */
+	public int shardIndex(K key) {
+		int index = shardFunction.shardFor(key, shards.size());
+		if (index < 0 || index >= shards.size()) {
+			throw new IllegalStateException("Shard function returned invalid shard " + index);
+		}
+		return index;
+	}
+
+	/**
+	 * @param key the key
+	 * @return the shard owning the key
+	 */
+	public Database shard(K key) {
+		return shards.get(shardIndex(key));
+	}
+
+	public DatabaseResponse execute(K key, CheckedConsumer<Connection> query) {
+		return shard(key).execute(query);
+	}
+
+	public DatabaseUpdateResponse executeUpdate(K key, CheckedFunction<Connection, Integer> query) {
+		return shard(key).executeUpdate(query);
+	}
+
+	public <T> DatabaseObjResponse<T> executeObjQuery(K key,
+			CheckedFunction<Connection, List<T>> adapter) {
+		return shard(key).executeObjQuery(adapter);
+	}
+
+	public <T> DatabaseObjResponse<T> executeObjQuery(K key,
+			CheckedFunction<Connection, ResultSet> query, CheckedFunction<ResultSet, List<T>> adapter) {
+		return shard(key).executeObjQuery(query, adapter);
+	}
+
+	public <T> DatabaseSingleObjResponse<T> executeSingleObjQuery(K key,
+			CheckedFunction<Connection, T> adapter) {
+		return shard(key).executeSingleObjQuery(adapter);
+	}
+
+	public <T> DatabaseSingleObjResponse<T> executeSingleObjQuery(K key,
+			CheckedFunction<Connection, ResultSet> query, CheckedFunction<ResultSet, T> adapter) {
+		return shard(key).executeSingleObjQuery(query, adapter);
+	}
+
+	/**
+	 * Runs the query on every shard in parallel and concatenates the results in shard order
+	 *
+	 * @param adapter the query to run on each shard
+	 * @param <T> the type of the object to return
+	 * @return the merged results or the first error if any shard failed
+	 */
+	public <T> DatabaseObjResponse<T> executeObjQueryAll(
+			CheckedFunction<Connection, List<T>> adapter) {
+		return executeObjQueryAll(adapter, null, 0);
+	}
+
+	/**
+	 * Runs the query on every shard in parallel and merges the results. If each shard returns its
+	 * rows sorted by the given order (and limited) the merged result is globally sorted and limited
+	 * without sorting everything again.
+	 *
+	 * @param adapter the query to run on each shard, should already apply the order and limit
+	 * @param order the order of the shard results or null to concatenate them in shard order
+	 * @param limit the maximum amount of results or 0 for no limit
+	 * @param <T> the type of the object to return
+	 * @return the merged results or the first error if any shard failed
+	 */
+	public <T> DatabaseObjResponse<T> executeObjQueryAll(
+			CheckedFunction<Connection, List<T>> adapter, Comparator<? super T> order, int limit) {
+		List<DatabaseObjResponse<T>> responses = fanOut(shard -> shard.executeObjQuery(adapter));
+		Exception error = firstError(responses);
+		if (error != null) {
+			return new DatabaseObjResponse<>(error, null);
+		}
+		List<List<T>> results = new ArrayList<>(responses.size());
+		for (DatabaseObjResponse<T> response : responses) {
+			results.add(response.getData() == null ? List.of() : response.getData());
+		}
+		return new DatabaseObjResponse<>(null, merge(results, order, limit));
+	}
+
+	/**
+	 * Runs the update on every shard in parallel
+	 *
+	 * @param query the update to run on each shard
+	 * @return the total amount of rows affected or the first error if any shard failed
+	 */
+	public DatabaseUpdateResponse executeUpdateAll(CheckedFunction<Connection, Integer> query) {
+		List<DatabaseUpdateResponse> responses = fanOut(shard -> shard.executeUpdate(query));
+		Exception error = firstError(responses);
+		if (error != null) {
+			return new DatabaseUpdateResponse(error, -1);
+		}
+		int total = 0;
+		for (DatabaseUpdateResponse response : responses) {
+			total += response.getResponse();
+		}
+		return new DatabaseUpdateResponse(null, total);
+	}
+
+	private <R> List<R> fanOut(Function<Database, R> call) {
+		if (shards.size() == 1) {
+			return List.of(call.apply(shards.get(0)));
+		}
+		List<CompletableFuture<R>> futures = new ArrayList<>(shards.size());
+		for (Database shard : shards) {
+			futures.add(CompletableFuture.supplyAsync(() -> call.apply(shard), executor));
+		}
+		List<R> results = new ArrayList<>(futures.size());
+		for (CompletableFuture<R> future : futures) {
+			results.add(future.join());
+		}
+		return results;
+	}
+
+	private static Exception firstError(List<? extends DatabaseResponse> responses) {
+		Exception error = null;
+		for (DatabaseResponse response : responses) {
+			if (!response.hasError()) {
+				continue;
+			}
+			if (error == null) {
+				error = response.getException();
+			} else if (response.getException() != error) {
+				error.addSuppressed(response.getException());
+			}
+		}
+		return error;
+	}
+
+	private static <T> List<T> merge(List<List<T>> results, Comparator<? super T> order, int limit) {
+		int total = 0;
+		for (List<T> result : results) {
+			total += result.size();
+		}
+		int size = limit > 0 ? Math.min(limit, total) : total;
+		List<T> merged = new ArrayList<>(size);
+		if (order == null) {
+			for (List<T> result : results) {
+				for (T value : result) {
+					if (merged.size() == size) {
+						return merged;
+					}
+					merged.add(value);
+				}
+			}
+			return merged;
+		}
+
+		//k-way merge of the already sorted shard results
+		PriorityQueue<Head<T>> heads = new PriorityQueue<>(results.size(),
+				(first, second) -> order.compare(first.value, second.value));
+		for (List<T> result : results) {
+			Iterator<T> iterator = result.iterator();
+			if (iterator.hasNext()) {
+				heads.add(new Head<>(iterator.next(), iterator));
+			}
+		}
+		while (merged.size() < size && !heads.isEmpty()) {
+			Head<T> head = heads.poll();
+			merged.add(head.value);
+			if (head.iterator.hasNext()) {
+				heads.add(new Head<>(head.iterator.next(), head.iterator));
+			}
+		}
+		return merged;
+	}
+
+	private record Head<T>(T value, Iterator<T> iterator) {
+	}
+
+	/**
+	 * Closes all shards and the internal executor if none was provided
+	 */
+	@Override
+	public void close() {
+		if (ownsExecutor) {
+			executor.shutdown();
+		}
+		for (Database shard : shards) {
+			shard.disconnect();
+		}
+	}
+}
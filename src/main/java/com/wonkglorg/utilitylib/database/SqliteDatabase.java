@@ -3,6 +3,11 @@ package com.wonkglorg.utilitylib.database;
 import com.wonkglorg.util.database.response.*;
 import com.wonkglorg.util.interfaces.functional.checked.CheckedConsumer;
 import com.wonkglorg.util.interfaces.functional.checked.CheckedFunction;
+import com.wonkglorg.utilitylib.database.cache.ChangeEvent;
+import com.wonkglorg.utilitylib.database.cache.ChangeEvent.Operation;
+import org.sqlite.SQLiteCommitListener;
+import org.sqlite.SQLiteConnection;
+import org.sqlite.SQLiteUpdateListener;
 
 import java.io.File;
 import java.io.IOException;
@@ -12,7 +17,11 @@ import java.net.URLConnection;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.sql.*;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.logging.Level;
@@ -26,6 +35,17 @@ public class SqliteDatabase extends Database {
 	protected Connection connection;
 	protected final Path destinationPath;
 	protected final String databaseName;
+	private final List<Consumer<ChangeEvent>> changeListeners = new CopyOnWriteArrayList<>();
+	/**
+	 * Tables changed since the last commit, reported again as {@link Operation#ROLLBACK} if the
+	 * transaction is rolled back
+	 */
+	private final Set<ChangeEvent> uncommitted = ConcurrentHashMap.newKeySet();
+	/**
+	 * Tables with inserted or updated rows since the last commit, reported as
+	 * {@link Operation#WRITE_COMMITTED} once committed
+	 */
+	private final Set<ChangeEvent> written = ConcurrentHashMap.newKeySet();
 
 	/**
 	 * * Creates a Sqlite database at the specified copyToPath.
@@ -86,12 +106,95 @@ public class SqliteDatabase extends Database {
 			}
 			String connectionString = getDriver() + destinationPath;
 			connection = DriverManager.getConnection(connectionString);
+			registerUpdateHook(connection);
 
 		} catch (ClassNotFoundException | SQLException | IOException e) {
 			logger.log(Level.SEVERE, e.getMessage(), e);
 		}
 	}
 
+	/**
+	 * Registers sqlite's update hook on the connection, every row inserted, updated or deleted through
+	 * it is published to the {@link #addChangeListener(Consumer) change listeners}
+	 */
+	private void registerUpdateHook(Connection connection) throws SQLException {
+		SQLiteConnection sqliteConnection = connection.unwrap(SQLiteConnection.class);
+		sqliteConnection.addUpdateListener((type, database, table, rowId) -> {
+			uncommitted.add(new ChangeEvent(database, table, Operation.ROLLBACK, -1));
+			if (type != SQLiteUpdateListener.Type.DELETE) {
+				//rows deleted by a REPLACE conflict resolution are not reported on their own
+				written.add(new ChangeEvent(database, table, Operation.WRITE_COMMITTED, -1));
+			}
+			publish(new ChangeEvent(database, table, Operation.valueOf(type.name()), rowId));
+		});
+		sqliteConnection.addCommitListener(new SQLiteCommitListener() {
+			@Override
+			public void onCommit() {
+				List<ChangeEvent> committed = new ArrayList<>(written);
+				written.clear();
+				uncommitted.clear();
+				committed.forEach(SqliteDatabase.this::publish);
+			}
+
+			@Override
+			public void onRollback() {
+				List<ChangeEvent> reverted = new ArrayList<>(uncommitted);
+				uncommitted.clear();
+				written.clear();
+				reverted.forEach(SqliteDatabase.this::publish);
+			}
+		});
+	}
+
+	private void publish(ChangeEvent event) {
+		for (Consumer<ChangeEvent> listener : changeListeners) {
+			try {
+				listener.accept(event);
+			} catch (RuntimeException e) {
+				errorReporter.report(e);
+			}
+		}
+	}
+
+	/**
+	 * Subscribes to row changes made through this database. Listeners are called by sqlite while the
+	 * changing statement runs, before its transaction commits, and must neither block nor use the
+	 * connection.
+	 * <p>
+	 * Sqlite does not report every change:
+	 * <ul>
+	 *     <li>changes by other processes and to {@code WITHOUT ROWID} tables</li>
+	 *     <li>{@code DELETE FROM table} without a where clause uses the truncate optimization which
+	 *     reports nothing, {@code DELETE FROM table WHERE true} is reported row by row</li>
+	 *     <li>rows deleted by {@code REPLACE} conflict resolution, tables with inserted or updated
+	 *     rows are reported as {@link Operation#WRITE_COMMITTED} on commit to cover them</li>
+	 *     <li>schema changes like {@code DROP TABLE} or {@code ALTER TABLE}</li>
+	 * </ul>
+	 * Code making such changes should call {@link #notifyTableChanged(String)}.
+	 *
+	 * @param listener receives every changed row
+	 */
+	public void addChangeListener(Consumer<ChangeEvent> listener) {
+		changeListeners.add(listener);
+	}
+
+	/**
+	 * Publishes an {@link Operation#INVALIDATE} of a table, for changes sqlite does not report like
+	 * truncating deletes or schema changes
+	 *
+	 * @param table the changed table
+	 */
+	public void notifyTableChanged(String table) {
+		publish(new ChangeEvent("main", table, Operation.INVALIDATE, -1));
+	}
+
+	/**
+	 * @param listener the listener to unsubscribe
+	 */
+	public void removeChangeListener(Consumer<ChangeEvent> listener) {
+		changeListeners.remove(listener);
+	}
+
 	/**
 	 * Copies the database file from the sourcePath to the destinationPath or creates a new file
 	 * if it
@@ -141,6 +244,7 @@ public class SqliteDatabase extends Database {
 				logger.log(Level.SEVERE, e.getMessage(), e);
 			}
 		}
+		errorReporter.flush();
 	}
 
 	@Override
@@ -200,7 +304,7 @@ public class SqliteDatabase extends Database {
 			query.accept(getConnection());
 			return new DatabaseResponse(null);
 		} catch (Exception e) {
-			logger.log(Level.SEVERE, e.getMessage(), e);
+			errorReporter.report(e);
 			return new DatabaseResponse(e);
 		}
 	}
@@ -210,7 +314,7 @@ public class SqliteDatabase extends Database {
 		try {
 			return new DatabaseUpdateResponse(null, query.apply(getConnection()));
 		} catch (Exception e) {
-			logger.log(Level.SEVERE, e.getMessage(), e);
+			errorReporter.report(e);
 			return new DatabaseUpdateResponse(e, -1);
 		}
 	}
@@ -223,14 +327,14 @@ public class SqliteDatabase extends Database {
 			statement = query.apply(getConnection());
 			return new DatabaseUpdateResponse(null, result.apply(statement));
 		} catch (Exception e) {
-			logger.log(Level.SEVERE, e.getMessage(), e);
+			errorReporter.report(e);
 			return new DatabaseUpdateResponse(e, -1);
 		} finally {
 			if (statement != null) {
 				try {
 					statement.close();
 				} catch (SQLException e) {
-					logger.log(Level.SEVERE, e.getMessage(), e);
+					errorReporter.report(e);
 				}
 			}
 		}
@@ -241,7 +345,7 @@ public class SqliteDatabase extends Database {
 		try {
 			return new DatabaseResultSetResponse(null, query.apply(getConnection()));
 		} catch (Exception e) {
-			logger.log(Level.SEVERE, e.getMessage(), e);
+			errorReporter.report(e);
 			return new DatabaseResultSetResponse(e, null);
 		}
 	}
@@ -254,7 +358,7 @@ public class SqliteDatabase extends Database {
 			PreparedStatement statement = query.apply(getConnection());
 			return new DatabaseResultSetResponse(null, result.apply(statement));
 		} catch (Exception e) {
-			logger.log(Level.SEVERE, e.getMessage(), e);
+			errorReporter.report(e);
 			return new DatabaseResultSetResponse(e, null);
 		}
 	}
@@ -264,7 +368,7 @@ public class SqliteDatabase extends Database {
 		try {
 			return new DatabaseObjResponse<>(null, query.apply(getConnection()));
 		} catch (Exception e) {
-			logger.log(Level.SEVERE, e.getMessage(), e);
+			errorReporter.report(e);
 			return new DatabaseObjResponse<>(e, null);
 		}
 	}
@@ -278,7 +382,7 @@ public class SqliteDatabase extends Database {
 			List<T> results = adapter.apply(resultSet);
 			return new DatabaseObjResponse<>(null, results);
 		} catch (Exception e) {
-			logger.log(Level.SEVERE, e.getMessage(), e);
+			errorReporter.report(e);
 			return new DatabaseObjResponse<>(e, null);
 		} finally {
 			closeResources(resultSet);
@@ -291,7 +395,7 @@ public class SqliteDatabase extends Database {
 		try {
 			return new DatabaseSingleObjResponse<>(null, adapter.apply(getConnection()));
 		} catch (Exception e) {
-			logger.log(Level.SEVERE, e.getMessage(), e);
+			errorReporter.report(e);
 			return new DatabaseSingleObjResponse<>(e, null);
 		}
 	}
@@ -305,7 +409,7 @@ public class SqliteDatabase extends Database {
 			T results = adapter.apply(resultSet);
 			return new DatabaseSingleObjResponse<>(null, results);
 		} catch (Exception e) {
-			logger.log(Level.SEVERE, e.getMessage(), e);
+			errorReporter.report(e);
 			return new DatabaseSingleObjResponse<>(e, null);
 		} finally {
 			closeResources(resultSet);
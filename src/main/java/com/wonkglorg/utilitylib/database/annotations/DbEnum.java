@@ -0,0 +1,18 @@
+package com.wonkglorg.utilitylib.database.annotations;
+
+import com.wonkglorg.utilitylib.database.datatypes.EnumStorage;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Selects how an enum is stored when it is mapped automatically, enums without this annotation
+ * are stored by {@link EnumStorage#NAME}
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface DbEnum {
+	EnumStorage value();
+}
@@ -0,0 +1,17 @@
+package com.wonkglorg.utilitylib.database.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * The stable id an enum constant is stored as with
+ * {@link com.wonkglorg.utilitylib.database.datatypes.EnumStorage#ID}, unlike the ordinal it does
+ * not change when constants are reordered or added. Every constant of the enum needs a unique id.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface DbEnumId {
+	int value();
+}
@@ -0,0 +1,19 @@
+package com.wonkglorg.utilitylib.database.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a record for the {@link com.wonkglorg.utilitylib.database.processor.DbRecordProcessor},
+ * which generates a reflection free mapper named {@code <Record>_DbMapper} at compile time. The
+ * record adapters of {@link com.wonkglorg.utilitylib.database.Database} use the generated mapper
+ * when it exists and fall back to reflection otherwise.
+ * <p>
+ * The record must not be private, column names are the record component names.
+ */
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface DbRecord {
+}
@@ -0,0 +1,236 @@
+package com.wonkglorg.utilitylib.database.batch;
+
+import com.wonkglorg.utilitylib.database.response.DatabaseUpdateResponse;
+import com.wonkglorg.utilitylib.database.Database;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Merges concurrent updates using the same sql into batches. Updates are collected per sql text
+ * until the batch is full or the oldest update waited for the maximum delay, then the whole batch
+ * runs as one {@link PreparedStatement#executeBatch()} on a single connection.
+ * <p>
+ * Each update's future completes with the update count of its own row, which can be
+ * {@link Statement#SUCCESS_NO_INFO} if the driver does not report counts for batches. A batch runs
+ * in one transaction, if any row fails the batch is rolled back and its rows run one at a time so
+ * only the failing rows' futures fail.
+ *
+ * @author Wonkglorg
+ */
+@SuppressWarnings("unused")
+public class AutoBatcher implements AutoCloseable {
+	private final Database database;
+	private final int maxBatchSize;
+	private final long maxDelayNanos;
+	private final ScheduledExecutorService scheduler;
+	private final ExecutorService executor;
+	private final Map<String, Batch> pending = new HashMap<>();
+	private boolean closed;
+
+	/**
+	 * @param database the database to run the batches on
+	 * @param maxBatchSize the amount of updates after which a batch runs right away
+	 * @param maxDelay how long an update waits for others before its batch runs
+	 */
+	public AutoBatcher(Database database, int maxBatchSize, Duration maxDelay) {
+		if (maxBatchSize < 1) {
+			throw new IllegalArgumentException("Batch size must be at least 1");
+		}
+		this.database = database;
+		this.maxBatchSize = maxBatchSize;
+		this.maxDelayNanos = maxDelay.toNanos();
+		AtomicInteger threadCount = new AtomicInteger();
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "AutoBatcher-timer");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.executor = Executors.newCachedThreadPool(runnable -> {
+			Thread thread = new Thread(runnable, "AutoBatcher-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Creates a batcher running batches of up to 100 updates after at most 2ms
+	 *
+	 * @param database the database to run the batches on
+	 */
+	public AutoBatcher(Database database) {
+		this(database, 100, Duration.ofMillis(2));
+	}
+
+	/**
+	 * Queues an update to run with other updates using the same sql
+	 *
+	 * @param sql the update sql
+	 * @param parameters the values bound with {@link Database#setParameters(PreparedStatement, int,
+	 * Object...)}
+	 * @return a future completing with the update count of this row
+	 */
+	public CompletableFuture<Integer> submit(String sql, Object... parameters) {
+		CompletableFuture<Integer> future = new CompletableFuture<>();
+		Batch full = null;
+		synchronized (pending) {
+			if (closed) {
+				future.completeExceptionally(new IllegalStateException("AutoBatcher is closed"));
+				return future;
+			}
+			Batch batch = pending.computeIfAbsent(sql, Batch::new);
+			batch.entries.add(new Entry(parameters, future));
+			if (batch.entries.size() >= maxBatchSize) {
+				pending.remove(sql);
+				if (batch.timer != null) {
+					batch.timer.cancel(false);
+				}
+				full = batch;
+			} else if (batch.entries.size() == 1) {
+				batch.timer = scheduler.schedule(() -> flush(batch), maxDelayNanos,
+						TimeUnit.NANOSECONDS);
+			}
+		}
+		if (full != null) {
+			Batch batch = full;
+			executor.execute(() -> run(batch));
+		}
+		return future;
+	}
+
+	/**
+	 * Runs a batch whose delay ran out unless it already ran because it was full
+	 */
+	private void flush(Batch batch) {
+		synchronized (pending) {
+			if (pending.get(batch.sql) != batch) {
+				return;
+			}
+			pending.remove(batch.sql);
+		}
+		executor.execute(() -> run(batch));
+	}
+
+	private void run(Batch batch) {
+		List<Entry> entries = batch.entries;
+		DatabaseUpdateResponse response = database.executeUpdate(connection -> {
+			try (PreparedStatement statement = connection.prepareStatement(batch.sql)) {
+				if (entries.size() == 1 || !connection.getAutoCommit()) {
+					runEach(statement, entries);
+					return entries.size();
+				}
+				connection.setAutoCommit(false);
+				try {
+					int[] counts = runBatch(statement, entries);
+					connection.commit();
+					//rows only count as written once the commit succeeded
+					for (int i = 0; i < entries.size(); i++) {
+						entries.get(i).future.complete(
+								i < counts.length ? counts[i] : Statement.SUCCESS_NO_INFO);
+					}
+				} catch (SQLException e) {
+					//drivers differ in which rows of a failed batch ran, so redo them one by one
+					connection.rollback();
+					connection.setAutoCommit(true);
+					statement.clearBatch();
+					runEach(statement, entries);
+				} finally {
+					connection.setAutoCommit(true);
+				}
+			}
+			return entries.size();
+		});
+		if (response.hasError()) {
+			for (Entry entry : entries) {
+				entry.future.completeExceptionally(response.getException());
+			}
+		}
+	}
+
+	/**
+	 * Runs the entries as one batch without completing their futures
+	 *
+	 * @return the update counts of the rows
+	 */
+	private int[] runBatch(PreparedStatement statement, List<Entry> entries) throws SQLException {
+		for (Entry entry : entries) {
+			database.setParameters(statement, 0, entry.parameters);
+			statement.addBatch();
+		}
+		return statement.executeBatch();
+	}
+
+	/**
+	 * Runs the entries one at a time, each future completes with its own result or error
+	 */
+	private void runEach(PreparedStatement statement, List<Entry> entries) throws SQLException {
+		for (Entry entry : entries) {
+			try {
+				database.setParameters(statement, 0, entry.parameters);
+				entry.future.complete(statement.executeUpdate());
+			} catch (SQLException | RuntimeException e) {
+				entry.future.completeExceptionally(e);
+			}
+			statement.clearParameters();
+		}
+	}
+
+	/**
+	 * Runs all queued updates right away
+	 */
+	public void flush() {
+		List<Batch> batches;
+		synchronized (pending) {
+			batches = new ArrayList<>(pending.values());
+			pending.clear();
+		}
+		for (Batch batch : batches) {
+			if (batch.timer != null) {
+				batch.timer.cancel(false);
+			}
+			executor.execute(() -> run(batch));
+		}
+	}
+
+	/**
+	 * Runs all queued updates and stops accepting new ones, does not close the database
+	 */
+	@Override
+	public void close() {
+		synchronized (pending) {
+			closed = true;
+		}
+		flush();
+		scheduler.shutdownNow();
+		executor.shutdown();
+	}
+
+	private record Entry(Object[] parameters, CompletableFuture<Integer> future) {
+	}
+
+	/**
+	 * Updates collected for one sql text, entries only change while the batch is pending
+	 */
+	private static final class Batch {
+		private final String sql;
+		private final List<Entry> entries = new ArrayList<>();
+		private ScheduledFuture<?> timer;
+
+		private Batch(String sql) {
+			this.sql = sql;
+		}
+	}
+}
@@ -0,0 +1,50 @@
+package com.wonkglorg.utilitylib.database.cache;
+
+/**
+ * A row changed by a connection of this process, published by the sqlite update hook
+ *
+ * @param database the schema the table belongs to, {@code main} unless it is attached
+ * @param table the changed table
+ * @param operation what happened to the row
+ * @param rowId the rowid of the changed row, -1 for table wide operations
+ * @author Wonkglorg
+ */
+@SuppressWarnings("unused")
+public record ChangeEvent(String database, String table, Operation operation, long rowId) {
+
+	/**
+	 * @return true if the event concerns every row of the table instead of a single one
+	 */
+	public boolean isTableWide() {
+		return operation == Operation.ROLLBACK || operation == Operation.WRITE_COMMITTED
+				|| operation == Operation.INVALIDATE;
+	}
+
+	/**
+	 * @return true if the event concerns the given table, sqlite table names are case insensitive
+	 */
+	public boolean concerns(String table) {
+		return this.table.equalsIgnoreCase(table);
+	}
+
+	public enum Operation {
+		INSERT,
+		UPDATE,
+		DELETE,
+		/**
+		 * A transaction that changed the table was rolled back, its changes were reported before and
+		 * are undone now
+		 */
+		ROLLBACK,
+		/**
+		 * A transaction that inserted or updated rows of the table committed, rows deleted by
+		 * {@code REPLACE} conflict resolution during it were not reported
+		 */
+		WRITE_COMMITTED,
+		/**
+		 * Any row of the table may have changed, published by
+		 * {@link com.wonkglorg.utilitylib.database.SqliteDatabase#notifyTableChanged(String)}
+		 */
+		INVALIDATE
+	}
+}
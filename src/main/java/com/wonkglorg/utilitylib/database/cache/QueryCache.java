@@ -0,0 +1,152 @@
+package com.wonkglorg.utilitylib.database.cache;
+
+import com.wonkglorg.util.interfaces.functional.checked.CheckedFunction;
+import com.wonkglorg.utilitylib.database.SqliteDatabase;
+import com.wonkglorg.utilitylib.database.query.QueryKey;
+import com.wonkglorg.utilitylib.database.response.DatabaseObjResponse;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Caches query results that depend on a fixed set of tables. Entries do not expire, all of them
+ * are dropped as soon as the {@link SqliteDatabase#addChangeListener(Consumer) update hook} reports
+ * any change to one of the tables, as a result can not be traced back to the rows it came from.
+ * <p>
+ * Changes sqlite does not report (other processes, {@code DELETE} without a where clause, schema
+ * changes) leave the cache stale until {@link SqliteDatabase#notifyTableChanged(String)} or
+ * {@link #invalidateAll()} is called. Results are unmodifiable lists shared between callers, the
+ * rows should be immutable.
+ *
+ * @param <T> the type of the mapped rows
+ * @author Wonkglorg
+ */
+@SuppressWarnings("unused")
+public class QueryCache<T> implements AutoCloseable {
+	private final SqliteDatabase database;
+	private final CheckedFunction<ResultSet, T> adapter;
+	private final List<String> tables;
+	private final Map<QueryKey, List<T>> results = new ConcurrentHashMap<>();
+	/**
+	 * Increased by every invalidation, a query only keeps its result if no invalidation happened
+	 * while it ran
+	 */
+	private final AtomicLong generation = new AtomicLong();
+	private final Consumer<ChangeEvent> listener = this::onChange;
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+
+	/**
+	 * @param database the database to query
+	 * @param adapter maps the current row of the result set for every query of this cache
+	 * @param tables every table the cached queries read from
+	 */
+	public QueryCache(SqliteDatabase database, CheckedFunction<ResultSet, T> adapter,
+			String... tables) {
+		if (tables.length == 0) {
+			throw new IllegalArgumentException("At least one table is required");
+		}
+		this.database = database;
+		this.adapter = adapter;
+		this.tables = List.of(tables);
+		database.addChangeListener(listener);
+	}
+
+	/**
+	 * Returns the cached result or runs the query
+	 *
+	 * @param sql the query, it may only read from the tables of this cache
+	 * @param parameters the parameters of the query
+	 * @return the unmodifiable rows or the error of the query
+	 */
+	public DatabaseObjResponse<T> list(String sql, Object... parameters) {
+		QueryKey key = new QueryKey(sql, parameters);
+		List<T> cached = results.get(key);
+		if (cached != null) {
+			hits.increment();
+			return new DatabaseObjResponse<>(null, cached);
+		}
+		misses.increment();
+		long loadedAt = generation.get();
+		DatabaseObjResponse<T> response = database.executeObjQuery(connection -> {
+			try (PreparedStatement statement = connection.prepareStatement(sql)) {
+				database.setParameters(statement, 0, parameters);
+				List<T> rows = new ArrayList<>();
+				try (ResultSet resultSet = statement.executeQuery()) {
+					while (resultSet.next()) {
+						rows.add(adapter.applyThrows(resultSet));
+					}
+				}
+				return Collections.unmodifiableList(rows);
+			}
+		});
+		List<T> rows = response.getData();
+		if (!response.hasError() && generation.get() == loadedAt) {
+			results.put(key, rows);
+			//an invalidation between the check and the put would otherwise be lost
+			if (generation.get() != loadedAt) {
+				results.remove(key, rows);
+			}
+		}
+		return response;
+	}
+
+	private void onChange(ChangeEvent event) {
+		if (event.operation() == ChangeEvent.Operation.WRITE_COMMITTED) {
+			//the writes of the transaction already dropped everything when they were reported
+			return;
+		}
+		for (String table : tables) {
+			if (event.concerns(table)) {
+				invalidateAll();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Drops all cached results
+	 */
+	public void invalidateAll() {
+		generation.incrementAndGet();
+		results.clear();
+	}
+
+	/**
+	 * @return the amount of cached results
+	 */
+	public int size() {
+		return results.size();
+	}
+
+	/**
+	 * @return the amount of queries answered from the cache
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * @return the amount of queries that ran on the database
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * Unsubscribes from the database and drops all cached results
+	 */
+	@Override
+	public void close() {
+		database.removeChangeListener(listener);
+		invalidateAll();
+	}
+}
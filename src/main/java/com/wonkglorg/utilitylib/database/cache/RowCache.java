@@ -0,0 +1,170 @@
+package com.wonkglorg.utilitylib.database.cache;
+
+import com.wonkglorg.util.interfaces.functional.checked.CheckedFunction;
+import com.wonkglorg.utilitylib.database.SqliteDatabase;
+import com.wonkglorg.utilitylib.database.response.DatabaseSingleObjResponse;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Caches the rows of a single table by rowid. Entries do not expire, a row is dropped when the
+ * {@link SqliteDatabase#addChangeListener(Consumer) update hook} reports it as inserted, updated or
+ * deleted, and all rows are dropped when a transaction that changed the table rolls back. If the
+ * table has unique indexes, a {@code REPLACE} conflict can delete rows without a report, so all rows
+ * are dropped as well when a transaction that inserted or updated rows of it commits.
+ * <p>
+ * Changes sqlite does not report (other processes, {@code DELETE} without a where clause, schema
+ * changes) leave the cache stale until {@link SqliteDatabase#notifyTableChanged(String)} or
+ * {@link #invalidateAll()} is called. Cached rows are shared between callers and should be
+ * immutable.
+ *
+ * @param <T> the type of the mapped rows
+ * @author Wonkglorg
+ */
+@SuppressWarnings("unused")
+public class RowCache<T> implements AutoCloseable {
+	private final SqliteDatabase database;
+	private final String table;
+	private final CheckedFunction<ResultSet, T> adapter;
+	private final String sql;
+	/**
+	 * Whether the table has unique indexes whose conflicts can delete unreported rows
+	 */
+	private final boolean replaceable;
+	private final Map<Long, T> rows = new ConcurrentHashMap<>();
+	/**
+	 * Increased by every invalidation, a load only keeps its row if no invalidation happened while
+	 * it ran
+	 */
+	private final AtomicLong generation = new AtomicLong();
+	private final Consumer<ChangeEvent> listener = this::onChange;
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+
+	/**
+	 * @param database the database holding the table
+	 * @param table the cached table, it must be a rowid table
+	 * @param adapter maps the current row of the result set
+	 */
+	public RowCache(SqliteDatabase database, String table, CheckedFunction<ResultSet, T> adapter) {
+		this.database = database;
+		this.table = table;
+		this.adapter = adapter;
+		this.sql = "SELECT * FROM " + table + " WHERE rowid = ?";
+		this.replaceable = hasUniqueIndex(database, table);
+		database.addChangeListener(listener);
+	}
+
+	/**
+	 * Returns the cached row or loads it
+	 *
+	 * @param rowId the rowid of the row
+	 * @return the row, null if it does not exist (missing rows are not cached), or the error of the
+	 * load
+	 */
+	public DatabaseSingleObjResponse<T> get(long rowId) {
+		T cached = rows.get(rowId);
+		if (cached != null) {
+			hits.increment();
+			return new DatabaseSingleObjResponse<>(null, cached);
+		}
+		misses.increment();
+		long loadedAt = generation.get();
+		DatabaseSingleObjResponse<T> response = database.executeSingleObjQuery(connection -> {
+			try (PreparedStatement statement = connection.prepareStatement(sql)) {
+				statement.setLong(1, rowId);
+				try (ResultSet resultSet = statement.executeQuery()) {
+					return resultSet.next() ? adapter.applyThrows(resultSet) : null;
+				}
+			}
+		});
+		T row = response.getData();
+		if (!response.hasError() && row != null && generation.get() == loadedAt) {
+			rows.put(rowId, row);
+			//an invalidation between the check and the put would otherwise be lost
+			if (generation.get() != loadedAt) {
+				rows.remove(rowId, row);
+			}
+		}
+		return response;
+	}
+
+	/**
+	 * @return true if the table has a unique index or its indexes could not be read
+	 */
+	private static boolean hasUniqueIndex(SqliteDatabase database, String table) {
+		DatabaseSingleObjResponse<Boolean> response = database.executeSingleObjQuery(connection -> {
+			try (Statement statement = connection.createStatement();
+					ResultSet resultSet = statement.executeQuery("PRAGMA index_list(" + table + ")")) {
+				while (resultSet.next()) {
+					if (resultSet.getInt("unique") == 1) {
+						return true;
+					}
+				}
+				return false;
+			}
+		});
+		return response.hasError() || response.getData();
+	}
+
+	private void onChange(ChangeEvent event) {
+		if (!event.concerns(table)) {
+			return;
+		}
+		if (event.operation() == ChangeEvent.Operation.WRITE_COMMITTED && !replaceable) {
+			//every changed row was already reported on its own
+			return;
+		}
+		generation.incrementAndGet();
+		if (event.isTableWide()) {
+			rows.clear();
+		} else {
+			rows.remove(event.rowId());
+		}
+	}
+
+	/**
+	 * Drops all cached rows
+	 */
+	public void invalidateAll() {
+		generation.incrementAndGet();
+		rows.clear();
+	}
+
+	/**
+	 * @return the amount of cached rows
+	 */
+	public int size() {
+		return rows.size();
+	}
+
+	/**
+	 * @return the amount of lookups answered from the cache
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * @return the amount of lookups that had to query the database
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * Unsubscribes from the database and drops all cached rows
+	 */
+	@Override
+	public void close() {
+		database.removeChangeListener(listener);
+		invalidateAll();
+	}
+}
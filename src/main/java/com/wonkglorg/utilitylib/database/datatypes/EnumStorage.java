@@ -0,0 +1,20 @@
+package com.wonkglorg.utilitylib.database.datatypes;
+
+/**
+ * How {@link TypeHandlerEnum} stores enum constants
+ */
+public enum EnumStorage {
+	/**
+	 * The constant's ordinal as integer, smallest but changes when constants are reordered
+	 */
+	ORDINAL,
+	/**
+	 * The constant's name as string
+	 */
+	NAME,
+	/**
+	 * The integer given by {@link com.wonkglorg.utilitylib.database.annotations.DbEnumId} on each
+	 * constant
+	 */
+	ID
+}
@@ -0,0 +1,27 @@
+package com.wonkglorg.utilitylib.database.datatypes;
+
+import com.wonkglorg.utilitylib.database.Database.DatabaseType;
+
+/**
+ * How the {@code java.time} handlers store their values
+ */
+public enum TemporalStorage {
+	/**
+	 * Milliseconds since the epoch (UTC) in a {@code BIGINT}/{@code INTEGER} column, Sqlite has no
+	 * temporal types so this is both the smallest and fastest option there
+	 */
+	EPOCH_MILLIS,
+	/**
+	 * The database's own temporal types, bound and read through the JDBC 4.2 {@code java.time}
+	 * support of the driver without creating {@link java.sql.Timestamp} objects
+	 */
+	NATIVE;
+
+	/**
+	 * @param databaseType the database to get the storage for
+	 * @return {@link #EPOCH_MILLIS} for Sqlite and {@link #NATIVE} for everything else
+	 */
+	public static TemporalStorage forDatabaseType(DatabaseType databaseType) {
+		return databaseType == DatabaseType.SQLITE ? EPOCH_MILLIS : NATIVE;
+	}
+}
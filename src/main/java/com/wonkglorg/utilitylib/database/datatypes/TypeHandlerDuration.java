@@ -0,0 +1,37 @@
+package com.wonkglorg.utilitylib.database.datatypes;
+
+import com.wonkglorg.util.interfaces.functional.database.DataTypeHandler;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.Duration;
+
+/**
+ * Maps {@link Duration} as milliseconds in a {@code BIGINT} column, interval types are not
+ * portable between databases or drivers so this is used for every {@link TemporalStorage}
+ */
+public class TypeHandlerDuration implements DataTypeHandler<Duration> {
+	@Override
+	public void setParameter(PreparedStatement statement, int index, Object value)
+			throws SQLException {
+		if (value == null) {
+			statement.setNull(index, Types.BIGINT);
+		} else {
+			statement.setLong(index, ((Duration) value).toMillis());
+		}
+	}
+
+	@Override
+	public Duration getParameter(ResultSet resultSet, int index) throws SQLException {
+		long value = resultSet.getLong(index);
+		return resultSet.wasNull() ? null : Duration.ofMillis(value);
+	}
+
+	@Override
+	public Duration getParameter(ResultSet resultSet, String columnName) throws SQLException {
+		long value = resultSet.getLong(columnName);
+		return resultSet.wasNull() ? null : Duration.ofMillis(value);
+	}
+}
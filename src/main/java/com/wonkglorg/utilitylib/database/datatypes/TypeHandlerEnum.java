@@ -0,0 +1,141 @@
+package com.wonkglorg.utilitylib.database.datatypes;
+
+import com.wonkglorg.util.interfaces.functional.database.DataTypeHandler;
+import com.wonkglorg.utilitylib.database.annotations.DbEnum;
+import com.wonkglorg.utilitylib.database.annotations.DbEnumId;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Maps any enum by ordinal, name or stable id. All lookups are resolved once when the handler is
+ * created so mapping a row costs a single array or map access.
+ *
+ * @param <E> the enum type
+ */
+public class TypeHandlerEnum<E extends Enum<E>> implements DataTypeHandler<E> {
+	private final Class<E> enumClass;
+	private final EnumStorage storage;
+	private final E[] constants;
+	private final Map<String, E> byName;
+	private final Map<Integer, E> byId;
+	private final int[] ids;
+
+	/**
+	 * Creates a handler using the storage defined by {@link DbEnum} or {@link EnumStorage#NAME}
+	 *
+	 * @param enumClass the enum to map
+	 */
+	public TypeHandlerEnum(Class<E> enumClass) {
+		this(enumClass, enumClass.isAnnotationPresent(DbEnum.class) ? enumClass.getAnnotation(
+				DbEnum.class).value() : EnumStorage.NAME);
+	}
+
+	public TypeHandlerEnum(Class<E> enumClass, EnumStorage storage) {
+		this.enumClass = enumClass;
+		this.storage = storage;
+		this.constants = enumClass.getEnumConstants();
+		this.byName = new HashMap<>(constants.length * 2);
+		for (E constant : constants) {
+			byName.put(constant.name(), constant);
+		}
+
+		if (storage != EnumStorage.ID) {
+			this.byId = Map.of();
+			this.ids = new int[0];
+			return;
+		}
+		this.byId = new HashMap<>(constants.length * 2);
+		this.ids = new int[constants.length];
+		for (E constant : constants) {
+			DbEnumId id;
+			try {
+				id = enumClass.getField(constant.name()).getAnnotation(DbEnumId.class);
+			} catch (NoSuchFieldException e) {
+				throw new IllegalStateException("Enum constant field not found: " + constant.name(), e);
+			}
+			if (id == null) {
+				throw new IllegalArgumentException(
+						"Enum constant " + enumClass.getName() + "." + constant.name() + " has no @DbEnumId");
+			}
+			E previous = byId.put(id.value(), constant);
+			if (previous != null) {
+				throw new IllegalArgumentException(
+						"Duplicate @DbEnumId " + id.value() + " on " + previous.name() + " and "
+								+ constant.name());
+			}
+			ids[constant.ordinal()] = id.value();
+		}
+	}
+
+	public Class<E> getEnumClass() {
+		return enumClass;
+	}
+
+	public EnumStorage getStorage() {
+		return storage;
+	}
+
+	@Override
+	public void setParameter(PreparedStatement statement, int index, Object value)
+			throws SQLException {
+		if (value == null) {
+			statement.setNull(index, storage == EnumStorage.NAME ? Types.VARCHAR : Types.INTEGER);
+			return;
+		}
+		E constant = enumClass.cast(value);
+		switch (storage) {
+			case ORDINAL -> statement.setInt(index, constant.ordinal());
+			case NAME -> statement.setString(index, constant.name());
+			case ID -> statement.setInt(index, ids[constant.ordinal()]);
+		}
+	}
+
+	@Override
+	public E getParameter(ResultSet resultSet, int index) throws SQLException {
+		if (storage == EnumStorage.NAME) {
+			return fromName(resultSet.getString(index));
+		}
+		int value = resultSet.getInt(index);
+		return resultSet.wasNull() ? null : fromInt(value);
+	}
+
+	@Override
+	public E getParameter(ResultSet resultSet, String columnName) throws SQLException {
+		if (storage == EnumStorage.NAME) {
+			return fromName(resultSet.getString(columnName));
+		}
+		int value = resultSet.getInt(columnName);
+		return resultSet.wasNull() ? null : fromInt(value);
+	}
+
+	private E fromName(String name) throws SQLException {
+		if (name == null) {
+			return null;
+		}
+		E constant = byName.get(name);
+		if (constant == null) {
+			throw new SQLException("No constant " + name + " in enum " + enumClass.getName());
+		}
+		return constant;
+	}
+
+	private E fromInt(int value) throws SQLException {
+		E constant;
+		if (storage == EnumStorage.ORDINAL) {
+			constant = value >= 0 && value < constants.length ? constants[value] : null;
+		} else {
+			constant = byId.get(value);
+		}
+		if (constant == null) {
+			throw new SQLException(
+					"No constant with " + storage.name().toLowerCase() + " " + value + " in enum "
+							+ enumClass.getName());
+		}
+		return constant;
+	}
+}
@@ -1,20 +1,74 @@
 package com.wonkglorg.utilitylib.database.datatypes;
 
 import com.wonkglorg.util.interfaces.functional.database.DataTypeHandler;
+import com.wonkglorg.utilitylib.database.values.LazyImage;
 
+import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
 import java.awt.*;
+import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
-import java.io.InputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 import java.util.logging.Logger;
 
+/**
+ * Stores {@link Image} values as encoded image bytes (png by default) and decodes them on read.
+ * <p>
+ * Records that do not always need the decoded pixels should use {@link LazyImage} instead, which
+ * only decodes on first access.
+ */
 public class TypeHandlerImage implements DataTypeHandler<Image> {
+    /**
+     * The default format used to encode images, supported by every JDK without extra plugins
+     */
+    public static final String DEFAULT_FORMAT = "png";
+
+    /**
+     * ImageWriters are expensive to look up and not thread safe, so each thread keeps one per format
+     */
+    private static final ThreadLocal<Map<String, ImageWriter>> WRITERS = ThreadLocal.withInitial(HashMap::new);
+
+    /**
+     * Formats that can not store an alpha channel, images are flattened before writing those
+     */
+    private static final Set<String> OPAQUE_FORMATS = Set.of("jpg", "jpeg", "bmp", "wbmp");
+
+    private final String format;
+
+    public TypeHandlerImage() {
+        this(DEFAULT_FORMAT);
+    }
+
+    /**
+     * @param format the informal format name used to encode images (png, jpg, bmp, gif)
+     */
+    public TypeHandlerImage(String format) {
+        this.format = format.toLowerCase(Locale.ROOT);
+    }
+
     @Override
     public void setParameter(PreparedStatement statement, int index, Object value) throws SQLException {
-        statement.setBinaryStream(index, getInputStreamFromImage((Image) value));
+        if (value == null) {
+            statement.setBytes(index, null);
+            return;
+        }
+        try {
+            statement.setBytes(index, encode((Image) value, format));
+        } catch (IOException e) {
+            throw new SQLException("Failed to convert image to byte array: " + e.getMessage(), e);
+        }
     }
 
     @Override
@@ -28,20 +82,89 @@ public class TypeHandlerImage implements DataTypeHandler<Image> {
     }
 
     private Image getImageFromBytes(byte[] bytes) {
+        if (bytes == null) {
+            return null;
+        }
         try {
-            return ImageIO.read(new ByteArrayInputStream(bytes));
+            return decode(bytes);
         } catch (Exception e) {
             Logger.getGlobal().warning("Failed to convert byte array to image: " + e.getMessage());
         }
         return null;
     }
 
-    private InputStream getInputStreamFromImage(Image image) {
+    /**
+     * Decodes the given image bytes
+     *
+     * @param bytes the encoded image
+     * @return the decoded image or null if no registered reader understands the format
+     * @throws IOException if the bytes could not be read
+     */
+    public static BufferedImage decode(byte[] bytes) throws IOException {
+        return ImageIO.read(new ByteArrayInputStream(bytes));
+    }
+
+    /**
+     * Encodes an image with a writer reused by the calling thread, {@link BufferedImage}s are
+     * exported directly from their raster without an intermediate copy when the format supports
+     * their color model.
+     *
+     * @param image the image to encode
+     * @param format the informal format name (png, jpg, bmp, gif)
+     * @return the encoded bytes
+     * @throws IOException if no writer exists for the format or encoding failed
+     */
+    public static byte[] encode(Image image, String format) throws IOException {
+        ImageWriter writer = getWriter(format);
+        BufferedImage bufferedImage = toBufferedImage(image, OPAQUE_FORMATS.contains(format.toLowerCase(Locale.ROOT)));
+
+        //encoded images are usually far smaller than their pixel count, let the buffer grow instead
+        ByteArrayOutputStream output = new ByteArrayOutputStream(8 * 1024);
+        try (ImageOutputStream imageOutput = new MemoryCacheImageOutputStream(output)) {
+            writer.setOutput(imageOutput);
+            writer.write(null, new IIOImage(bufferedImage, null, null), writer.getDefaultWriteParam());
+        } finally {
+            writer.reset();
+        }
+        return output.toByteArray();
+    }
+
+    private static ImageWriter getWriter(String format) throws IOException {
+        String key = format.toLowerCase(Locale.ROOT);
+        Map<String, ImageWriter> writers = WRITERS.get();
+        ImageWriter writer = writers.get(key);
+        if (writer == null) {
+            Iterator<ImageWriter> available = ImageIO.getImageWritersByFormatName(key);
+            if (!available.hasNext()) {
+                throw new IOException("No image writer available for format: " + format);
+            }
+            writer = available.next();
+            writers.put(key, writer);
+        }
+        return writer;
+    }
+
+    /**
+     * Converts any image to a buffered image, already buffered images are returned as is unless
+     * the alpha channel has to be dropped for the target format
+     */
+    private static BufferedImage toBufferedImage(Image image, boolean dropAlpha) {
+        if (image instanceof BufferedImage bufferedImage && !(dropAlpha && bufferedImage.getColorModel().hasAlpha())) {
+            return bufferedImage;
+        }
+        int width = image.getWidth(null);
+        int height = image.getHeight(null);
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Image is not fully loaded or has no size");
+        }
+        BufferedImage converted = new BufferedImage(width, height,
+                dropAlpha ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = converted.createGraphics();
         try {
-            return new ByteArrayInputStream(image.toString().getBytes());
-        } catch (Exception e) {
-            Logger.getGlobal().warning("Failed to convert image to byte array: " + e.getMessage());
+            graphics.drawImage(image, 0, 0, null);
+        } finally {
+            graphics.dispose();
         }
-        return null;
+        return converted;
     }
 }
@@ -0,0 +1,60 @@
+package com.wonkglorg.utilitylib.database.datatypes;
+
+import com.wonkglorg.util.interfaces.functional.database.DataTypeHandler;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Maps {@link Instant}, natively stored as {@code TIMESTAMP WITH TIME ZONE}/{@code DATETIMEOFFSET}
+ * (bound in UTC) or as epoch milliseconds.
+ */
+public class TypeHandlerInstant implements DataTypeHandler<Instant> {
+	private final TemporalStorage storage;
+
+	public TypeHandlerInstant() {
+		this(TemporalStorage.NATIVE);
+	}
+
+	public TypeHandlerInstant(TemporalStorage storage) {
+		this.storage = storage;
+	}
+
+	@Override
+	public void setParameter(PreparedStatement statement, int index, Object value)
+			throws SQLException {
+		if (value == null) {
+			statement.setNull(index,
+					storage == TemporalStorage.EPOCH_MILLIS ? Types.BIGINT : Types.TIMESTAMP_WITH_TIMEZONE);
+		} else if (storage == TemporalStorage.EPOCH_MILLIS) {
+			statement.setLong(index, ((Instant) value).toEpochMilli());
+		} else {
+			statement.setObject(index, OffsetDateTime.ofInstant((Instant) value, ZoneOffset.UTC));
+		}
+	}
+
+	@Override
+	public Instant getParameter(ResultSet resultSet, int index) throws SQLException {
+		if (storage == TemporalStorage.NATIVE) {
+			OffsetDateTime dateTime = resultSet.getObject(index, OffsetDateTime.class);
+			return dateTime == null ? null : dateTime.toInstant();
+		}
+		long value = resultSet.getLong(index);
+		return resultSet.wasNull() ? null : Instant.ofEpochMilli(value);
+	}
+
+	@Override
+	public Instant getParameter(ResultSet resultSet, String columnName) throws SQLException {
+		if (storage == TemporalStorage.NATIVE) {
+			OffsetDateTime dateTime = resultSet.getObject(columnName, OffsetDateTime.class);
+			return dateTime == null ? null : dateTime.toInstant();
+		}
+		long value = resultSet.getLong(columnName);
+		return resultSet.wasNull() ? null : Instant.ofEpochMilli(value);
+	}
+}
@@ -0,0 +1,41 @@
+package com.wonkglorg.utilitylib.database.datatypes;
+
+import com.wonkglorg.util.interfaces.functional.database.DataTypeHandler;
+import com.wonkglorg.util.ip.IPv4;
+import com.wonkglorg.utilitylib.database.values.IpRange;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Alternative to {@link TypeHandlerIpv4} storing addresses as their unsigned 32 bit value instead
+ * of a string, use an {@code INT UNSIGNED} (MySql/MariaDB), {@code BIGINT} (Postgresql/SqlServer)
+ * or {@code INTEGER} (Sqlite) column. Numeric storage keeps the natural address order so ranges
+ * can be queried through an index with {@link IpRange}.
+ * <p>
+ * Register with {@code Database.addDataMapper(IPv4.class, new TypeHandlerIpv4Binary())}
+ */
+public class TypeHandlerIpv4Binary implements DataTypeHandler<IPv4> {
+	@Override
+	public void setParameter(PreparedStatement statement, int index, Object value)
+			throws SQLException {
+		if (value == null) {
+			statement.setNull(index, java.sql.Types.BIGINT);
+			return;
+		}
+		statement.setLong(index, IpRange.ipv4ToLong(value.toString()));
+	}
+
+	@Override
+	public IPv4 getParameter(ResultSet resultSet, int index) throws SQLException {
+		long value = resultSet.getLong(index);
+		return resultSet.wasNull() ? null : IPv4.of(IpRange.longToIpv4(value));
+	}
+
+	@Override
+	public IPv4 getParameter(ResultSet resultSet, String columnName) throws SQLException {
+		long value = resultSet.getLong(columnName);
+		return resultSet.wasNull() ? null : IPv4.of(IpRange.longToIpv4(value));
+	}
+}
@@ -0,0 +1,45 @@
+package com.wonkglorg.utilitylib.database.datatypes;
+
+import com.wonkglorg.util.interfaces.functional.database.DataTypeHandler;
+import com.wonkglorg.util.ip.IPv6;
+import com.wonkglorg.utilitylib.database.values.IpRange;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Alternative to {@link TypeHandlerIpv6} storing addresses as their 16 network order bytes instead
+ * of a string, use a {@code BINARY(16)} (MySql/MariaDB/SqlServer), {@code BYTEA} (Postgresql) or
+ * {@code BLOB} (Sqlite) column. Binary values compare byte wise so ranges can be queried through an
+ * index with {@link IpRange}.
+ * <p>
+ * Register with {@code Database.addDataMapper(IPv6.class, new TypeHandlerIpv6Binary())}
+ */
+public class TypeHandlerIpv6Binary implements DataTypeHandler<IPv6> {
+	@Override
+	public void setParameter(PreparedStatement statement, int index, Object value)
+			throws SQLException {
+		statement.setBytes(index, value == null ? null : IpRange.ipv6ToBytes(value.toString()));
+	}
+
+	@Override
+	public IPv6 getParameter(ResultSet resultSet, int index) throws SQLException {
+		return toIpv6(resultSet.getBytes(index));
+	}
+
+	@Override
+	public IPv6 getParameter(ResultSet resultSet, String columnName) throws SQLException {
+		return toIpv6(resultSet.getBytes(columnName));
+	}
+
+	private IPv6 toIpv6(byte[] bytes) throws SQLException {
+		if (bytes == null) {
+			return null;
+		}
+		if (bytes.length != 16) {
+			throw new SQLException("Expected 16 bytes for an IPv6 address but got " + bytes.length);
+		}
+		return IPv6.of(IpRange.bytesToIpv6(bytes));
+	}
+}
@@ -0,0 +1,47 @@
+package com.wonkglorg.utilitylib.database.datatypes;
+
+import com.wonkglorg.util.interfaces.functional.database.DataTypeHandler;
+import com.wonkglorg.utilitylib.database.values.LazyImage;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Maps image columns to {@link LazyImage}, only the encoded bytes are read, decoding is deferred
+ * until the image is actually used.
+ */
+public class TypeHandlerLazyImage implements DataTypeHandler<LazyImage> {
+	private final boolean cacheDecoded;
+
+	public TypeHandlerLazyImage() {
+		this(true);
+	}
+
+	/**
+	 * @param cacheDecoded if images read by this handler keep their decoded form after first access
+	 */
+	public TypeHandlerLazyImage(boolean cacheDecoded) {
+		this.cacheDecoded = cacheDecoded;
+	}
+
+	@Override
+	public void setParameter(PreparedStatement statement, int index, Object value)
+			throws SQLException {
+		statement.setBytes(index, value == null ? null : ((LazyImage) value).getBytes());
+	}
+
+	@Override
+	public LazyImage getParameter(ResultSet resultSet, int index) throws SQLException {
+		return toLazyImage(resultSet.getBytes(index));
+	}
+
+	@Override
+	public LazyImage getParameter(ResultSet resultSet, String columnName) throws SQLException {
+		return toLazyImage(resultSet.getBytes(columnName));
+	}
+
+	private LazyImage toLazyImage(byte[] bytes) {
+		return bytes == null ? null : LazyImage.of(bytes, cacheDecoded);
+	}
+}
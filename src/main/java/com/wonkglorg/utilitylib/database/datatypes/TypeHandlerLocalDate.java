@@ -0,0 +1,57 @@
+package com.wonkglorg.utilitylib.database.datatypes;
+
+import com.wonkglorg.util.interfaces.functional.database.DataTypeHandler;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDate;
+
+/**
+ * Maps {@link LocalDate}, natively stored as {@code DATE} or as the epoch milliseconds of its
+ * midnight in UTC.
+ */
+public class TypeHandlerLocalDate implements DataTypeHandler<LocalDate> {
+	private static final long MILLIS_PER_DAY = 86_400_000L;
+	private final TemporalStorage storage;
+
+	public TypeHandlerLocalDate() {
+		this(TemporalStorage.NATIVE);
+	}
+
+	public TypeHandlerLocalDate(TemporalStorage storage) {
+		this.storage = storage;
+	}
+
+	@Override
+	public void setParameter(PreparedStatement statement, int index, Object value)
+			throws SQLException {
+		if (value == null) {
+			statement.setNull(index,
+					storage == TemporalStorage.EPOCH_MILLIS ? Types.BIGINT : Types.DATE);
+		} else if (storage == TemporalStorage.EPOCH_MILLIS) {
+			statement.setLong(index, ((LocalDate) value).toEpochDay() * MILLIS_PER_DAY);
+		} else {
+			statement.setObject(index, value);
+		}
+	}
+
+	@Override
+	public LocalDate getParameter(ResultSet resultSet, int index) throws SQLException {
+		if (storage == TemporalStorage.NATIVE) {
+			return resultSet.getObject(index, LocalDate.class);
+		}
+		long value = resultSet.getLong(index);
+		return resultSet.wasNull() ? null : LocalDate.ofEpochDay(Math.floorDiv(value, MILLIS_PER_DAY));
+	}
+
+	@Override
+	public LocalDate getParameter(ResultSet resultSet, String columnName) throws SQLException {
+		if (storage == TemporalStorage.NATIVE) {
+			return resultSet.getObject(columnName, LocalDate.class);
+		}
+		long value = resultSet.getLong(columnName);
+		return resultSet.wasNull() ? null : LocalDate.ofEpochDay(Math.floorDiv(value, MILLIS_PER_DAY));
+	}
+}
@@ -0,0 +1,62 @@
+package com.wonkglorg.utilitylib.database.datatypes;
+
+import com.wonkglorg.util.interfaces.functional.database.DataTypeHandler;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Maps {@link LocalDateTime}, natively stored as {@code TIMESTAMP}/{@code DATETIME2} or as epoch
+ * milliseconds interpreting the value as UTC.
+ */
+public class TypeHandlerLocalDateTime implements DataTypeHandler<LocalDateTime> {
+	private final TemporalStorage storage;
+
+	public TypeHandlerLocalDateTime() {
+		this(TemporalStorage.NATIVE);
+	}
+
+	public TypeHandlerLocalDateTime(TemporalStorage storage) {
+		this.storage = storage;
+	}
+
+	@Override
+	public void setParameter(PreparedStatement statement, int index, Object value)
+			throws SQLException {
+		if (value == null) {
+			statement.setNull(index,
+					storage == TemporalStorage.EPOCH_MILLIS ? Types.BIGINT : Types.TIMESTAMP);
+		} else if (storage == TemporalStorage.EPOCH_MILLIS) {
+			statement.setLong(index, ((LocalDateTime) value).toInstant(ZoneOffset.UTC).toEpochMilli());
+		} else {
+			statement.setObject(index, value);
+		}
+	}
+
+	@Override
+	public LocalDateTime getParameter(ResultSet resultSet, int index) throws SQLException {
+		if (storage == TemporalStorage.NATIVE) {
+			return resultSet.getObject(index, LocalDateTime.class);
+		}
+		long value = resultSet.getLong(index);
+		return resultSet.wasNull() ? null : fromEpochMillis(value);
+	}
+
+	@Override
+	public LocalDateTime getParameter(ResultSet resultSet, String columnName) throws SQLException {
+		if (storage == TemporalStorage.NATIVE) {
+			return resultSet.getObject(columnName, LocalDateTime.class);
+		}
+		long value = resultSet.getLong(columnName);
+		return resultSet.wasNull() ? null : fromEpochMillis(value);
+	}
+
+	private static LocalDateTime fromEpochMillis(long millis) {
+		return LocalDateTime.ofEpochSecond(Math.floorDiv(millis, 1000),
+				Math.floorMod(millis, 1000) * 1_000_000, ZoneOffset.UTC);
+	}
+}
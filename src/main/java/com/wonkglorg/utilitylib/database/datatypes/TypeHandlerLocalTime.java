@@ -0,0 +1,55 @@
+package com.wonkglorg.utilitylib.database.datatypes;
+
+import com.wonkglorg.util.interfaces.functional.database.DataTypeHandler;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalTime;
+
+/**
+ * Maps {@link LocalTime}, natively stored as {@code TIME} or as milliseconds since midnight.
+ */
+public class TypeHandlerLocalTime implements DataTypeHandler<LocalTime> {
+	private final TemporalStorage storage;
+
+	public TypeHandlerLocalTime() {
+		this(TemporalStorage.NATIVE);
+	}
+
+	public TypeHandlerLocalTime(TemporalStorage storage) {
+		this.storage = storage;
+	}
+
+	@Override
+	public void setParameter(PreparedStatement statement, int index, Object value)
+			throws SQLException {
+		if (value == null) {
+			statement.setNull(index,
+					storage == TemporalStorage.EPOCH_MILLIS ? Types.BIGINT : Types.TIME);
+		} else if (storage == TemporalStorage.EPOCH_MILLIS) {
+			statement.setLong(index, ((LocalTime) value).toNanoOfDay() / 1_000_000);
+		} else {
+			statement.setObject(index, value);
+		}
+	}
+
+	@Override
+	public LocalTime getParameter(ResultSet resultSet, int index) throws SQLException {
+		if (storage == TemporalStorage.NATIVE) {
+			return resultSet.getObject(index, LocalTime.class);
+		}
+		long value = resultSet.getLong(index);
+		return resultSet.wasNull() ? null : LocalTime.ofNanoOfDay(value * 1_000_000);
+	}
+
+	@Override
+	public LocalTime getParameter(ResultSet resultSet, String columnName) throws SQLException {
+		if (storage == TemporalStorage.NATIVE) {
+			return resultSet.getObject(columnName, LocalTime.class);
+		}
+		long value = resultSet.getLong(columnName);
+		return resultSet.wasNull() ? null : LocalTime.ofNanoOfDay(value * 1_000_000);
+	}
+}
@@ -0,0 +1,181 @@
+package com.wonkglorg.utilitylib.database.datatypes;
+
+import com.wonkglorg.util.interfaces.functional.database.DataTypeHandler;
+import com.wonkglorg.utilitylib.database.Database.DatabaseType;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.UUID;
+
+/**
+ * Stores {@link UUID}s in 16 bytes instead of their 36 character string form. The layout is
+ * chosen per database with {@link #forDatabaseType(DatabaseType)}:
+ * <ul>
+ *     <li>Sqlite: {@code BLOB}</li>
+ *     <li>MySql/MariaDB: {@code BINARY(16)}</li>
+ *     <li>Postgresql: native {@code UUID}</li>
+ *     <li>SqlServer: native {@code UNIQUEIDENTIFIER}</li>
+ * </ul>
+ */
+public class TypeHandlerUuid implements DataTypeHandler<UUID> {
+
+	/**
+	 * How a uuid is written to and read from its column
+	 */
+	public enum UuidStorage {
+		/**
+		 * 16 big endian bytes (most significant bits first), sorts the same as {@link UUID#toString()}
+		 */
+		BINARY,
+		/**
+		 * 16 bytes in the mixed endian order SqlServer uses internally for {@code UNIQUEIDENTIFIER}
+		 */
+		GUID,
+		/**
+		 * Passed to the driver as {@link UUID} object, for databases with a native uuid type
+		 */
+		NATIVE,
+		/**
+		 * The 36 character string form, only for existing tables
+		 */
+		STRING
+	}
+
+	private final UuidStorage storage;
+
+	public TypeHandlerUuid() {
+		this(UuidStorage.BINARY);
+	}
+
+	public TypeHandlerUuid(UuidStorage storage) {
+		this.storage = storage;
+	}
+
+	/**
+	 * @param databaseType the database the handler is used for
+	 * @return a handler using the most compact storage the database supports
+	 */
+	public static TypeHandlerUuid forDatabaseType(DatabaseType databaseType) {
+		if (databaseType == null) {
+			return new TypeHandlerUuid(UuidStorage.BINARY);
+		}
+		return switch (databaseType) {
+			case POSTGRESQL -> new TypeHandlerUuid(UuidStorage.NATIVE);
+			case SQLSERVER -> new TypeHandlerUuid(UuidStorage.GUID);
+			case MYSQL, MARIA, SQLITE -> new TypeHandlerUuid(UuidStorage.BINARY);
+		};
+	}
+
+	public UuidStorage getStorage() {
+		return storage;
+	}
+
+	@Override
+	public void setParameter(PreparedStatement statement, int index, Object value)
+			throws SQLException {
+		UUID uuid = (UUID) value;
+		switch (storage) {
+			case BINARY -> statement.setBytes(index, uuid == null ? null : toBytes(uuid, false));
+			case GUID -> statement.setBytes(index, uuid == null ? null : toBytes(uuid, true));
+			case NATIVE -> {
+				if (uuid == null) {
+					statement.setNull(index, Types.OTHER);
+				} else {
+					statement.setObject(index, uuid);
+				}
+			}
+			case STRING -> statement.setString(index, uuid == null ? null : uuid.toString());
+		}
+	}
+
+	@Override
+	public UUID getParameter(ResultSet resultSet, int index) throws SQLException {
+		return switch (storage) {
+			case BINARY -> fromBytes(resultSet.getBytes(index), false);
+			case GUID -> fromBytes(resultSet.getBytes(index), true);
+			case NATIVE -> resultSet.getObject(index, UUID.class);
+			case STRING -> fromString(resultSet.getString(index));
+		};
+	}
+
+	@Override
+	public UUID getParameter(ResultSet resultSet, String columnName) throws SQLException {
+		return switch (storage) {
+			case BINARY -> fromBytes(resultSet.getBytes(columnName), false);
+			case GUID -> fromBytes(resultSet.getBytes(columnName), true);
+			case NATIVE -> resultSet.getObject(columnName, UUID.class);
+			case STRING -> fromString(resultSet.getString(columnName));
+		};
+	}
+
+	/**
+	 * Converts a uuid to 16 bytes
+	 *
+	 * @param uuid the uuid to convert
+	 * @param guidOrder if the first 3 groups should be little endian like SqlServer stores them
+	 * @return the bytes
+	 */
+	public static byte[] toBytes(UUID uuid, boolean guidOrder) {
+		byte[] bytes = new byte[16];
+		long most = uuid.getMostSignificantBits();
+		long least = uuid.getLeastSignificantBits();
+		for (int i = 0; i < 8; i++) {
+			bytes[i] = (byte) (most >>> (56 - i * 8));
+			bytes[8 + i] = (byte) (least >>> (56 - i * 8));
+		}
+		if (guidOrder) {
+			swapGuidOrder(bytes);
+		}
+		return bytes;
+	}
+
+	/**
+	 * Converts 16 bytes to a uuid
+	 *
+	 * @param bytes the bytes to convert, may be null
+	 * @param guidOrder if the first 3 groups are little endian like SqlServer stores them
+	 * @return the uuid or null if the bytes were null
+	 * @throws SQLException if the value is not exactly 16 bytes long
+	 */
+	public static UUID fromBytes(byte[] bytes, boolean guidOrder) throws SQLException {
+		if (bytes == null) {
+			return null;
+		}
+		if (bytes.length != 16) {
+			throw new SQLException("Expected 16 bytes for a UUID but got " + bytes.length);
+		}
+		if (guidOrder) {
+			swapGuidOrder(bytes);
+		}
+		long most = 0;
+		long least = 0;
+		for (int i = 0; i < 8; i++) {
+			most = (most << 8) | (bytes[i] & 0xFF);
+			least = (least << 8) | (bytes[8 + i] & 0xFF);
+		}
+		return new UUID(most, least);
+	}
+
+	private static UUID fromString(String value) {
+		return value == null ? null : UUID.fromString(value);
+	}
+
+	/**
+	 * Reverses the byte order of the first 3 groups (4, 2 and 2 bytes), the conversion is its own
+	 * inverse
+	 */
+	private static void swapGuidOrder(byte[] bytes) {
+		swap(bytes, 0, 3);
+		swap(bytes, 1, 2);
+		swap(bytes, 4, 5);
+		swap(bytes, 6, 7);
+	}
+
+	private static void swap(byte[] bytes, int first, int second) {
+		byte temp = bytes[first];
+		bytes[first] = bytes[second];
+		bytes[second] = temp;
+	}
+}
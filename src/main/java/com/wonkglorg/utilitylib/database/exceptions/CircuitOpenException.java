@@ -0,0 +1,13 @@
+package com.wonkglorg.utilitylib.database.exceptions;
+
+import java.sql.SQLTransientConnectionException;
+
+/**
+ * Returned instead of running a call while the circuit breaker of a database is open
+ */
+@SuppressWarnings("unused")
+public class CircuitOpenException extends SQLTransientConnectionException {
+	public CircuitOpenException(String message) {
+		super(message, "08000");
+	}
+}
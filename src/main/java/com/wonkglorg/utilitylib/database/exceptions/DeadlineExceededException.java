@@ -0,0 +1,14 @@
+package com.wonkglorg.utilitylib.database.exceptions;
+
+import java.sql.SQLTimeoutException;
+
+/**
+ * Thrown before a statement is sent when the deadline of its call already passed, the database was
+ * never asked
+ */
+@SuppressWarnings("unused")
+public class DeadlineExceededException extends SQLTimeoutException {
+	public DeadlineExceededException(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,179 @@
+package com.wonkglorg.utilitylib.database.logging;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Logs database errors without flooding the log during an outage. Errors are grouped by exception
+ * class, SQLState and the call site outside of this library, the first error of a group is logged
+ * with its stack trace, repeats within the interval are only counted and logged as a single
+ * summary line once the interval has passed.
+ * <p>
+ * Summaries are written by the next error of the group or by {@link #flush()}, no background
+ * thread is used.
+ *
+ * @author Wonkglorg
+ */
+@SuppressWarnings("unused")
+public class ErrorReporter {
+	/**
+	 * Groups kept at most, all groups are forgotten when exceeded
+	 */
+	private static final int MAX_GROUPS = 1024;
+	private static final String LIBRARY_PACKAGE = "com.wonkglorg.utilitylib.database.";
+	private static final StackWalker walker = StackWalker.getInstance();
+	private final Logger logger;
+	private final Map<ErrorKey, Occurrences> groups = new ConcurrentHashMap<>();
+	private volatile long intervalNanos = Duration.ofMinutes(1).toNanos();
+	private volatile Level level = Level.SEVERE;
+
+	/**
+	 * @param logger the logger errors are written to
+	 */
+	public ErrorReporter(Logger logger) {
+		this.logger = logger;
+	}
+
+	/**
+	 * Sets how long repeats of an error are only counted before a summary is logged (default 1
+	 * minute), {@link Duration#ZERO} logs every error in full
+	 *
+	 * @return {@link ErrorReporter}
+	 */
+	public ErrorReporter interval(Duration interval) {
+		if (interval.isNegative()) {
+			throw new IllegalArgumentException("Interval must not be negative");
+		}
+		this.intervalNanos = interval.toNanos();
+		return this;
+	}
+
+	/**
+	 * Sets the level errors are logged with (default {@link Level#SEVERE})
+	 *
+	 * @return {@link ErrorReporter}
+	 */
+	public ErrorReporter level(Level level) {
+		this.level = level;
+		return this;
+	}
+
+	/**
+	 * Reports an error
+	 *
+	 * @param exception the error
+	 */
+	public void report(Throwable exception) {
+		if (!logger.isLoggable(level)) {
+			return;
+		}
+		if (intervalNanos == 0) {
+			logger.log(level, exception.getMessage(), exception);
+			return;
+		}
+		if (groups.size() >= MAX_GROUPS) {
+			groups.clear();
+		}
+		ErrorKey key = new ErrorKey(exception.getClass(), sqlState(exception), callSite());
+		groups.computeIfAbsent(key, k -> new Occurrences()).report(key, exception, System.nanoTime());
+	}
+
+	/**
+	 * Logs the summaries of all errors repeated since they were last logged
+	 */
+	public void flush() {
+		groups.forEach((key, occurrences) -> occurrences.flush(key));
+	}
+
+	/**
+	 * @return the amount of repeated errors counted but not yet logged in a summary
+	 */
+	public long getSuppressedCount() {
+		long count = 0;
+		for (Occurrences occurrences : groups.values()) {
+			count += occurrences.suppressed();
+		}
+		return count;
+	}
+
+	private static String sqlState(Throwable exception) {
+		for (Throwable cause = exception; cause != null; cause = cause.getCause()) {
+			if (cause instanceof SQLException sqlException && sqlException.getSQLState() != null) {
+				return sqlException.getSQLState();
+			}
+			if (cause.getCause() == cause) {
+				break;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return the first frame outside of this library, the code that called into the database
+	 */
+	private static String callSite() {
+		return walker.walk(frames -> frames.filter(
+						frame -> !frame.getClassName().startsWith(LIBRARY_PACKAGE))
+				.findFirst()
+				.map(frame -> frame.getClassName() + "." + frame.getMethodName() + ":"
+						+ frame.getLineNumber())
+				.orElse("unknown"));
+	}
+
+	private record ErrorKey(Class<?> type, String sqlState, String callSite) {
+
+		@Override
+		public String toString() {
+			return type.getName() + (sqlState == null ? "" : " [SQLState " + sqlState + "]") + " at "
+					+ callSite;
+		}
+	}
+
+	private final class Occurrences {
+		private long windowStart;
+		private long suppressed;
+		private String lastMessage;
+		private boolean started;
+
+		private synchronized void report(ErrorKey key, Throwable exception, long now) {
+			if (started && now - windowStart < intervalNanos) {
+				suppressed++;
+				lastMessage = exception.getMessage();
+				return;
+			}
+			if (suppressed > 0) {
+				//the group is still failing, a summary is enough
+				logSummary(key, now);
+				suppressed = 1;
+				lastMessage = exception.getMessage();
+				windowStart = now;
+				return;
+			}
+			started = true;
+			windowStart = now;
+			logger.log(level, exception.getMessage(), exception);
+		}
+
+		private synchronized void flush(ErrorKey key) {
+			if (suppressed > 0) {
+				logSummary(key, System.nanoTime());
+				suppressed = 0;
+			}
+		}
+
+		private void logSummary(ErrorKey key, long now) {
+			Duration since = Duration.ofNanos(now - windowStart);
+			logger.log(level, Objects.toString(lastMessage, key.type().getName()) + " (repeated "
+					+ suppressed + " times in " + since.toMillis() + "ms, " + key + ")");
+		}
+
+		private synchronized long suppressed() {
+			return suppressed;
+		}
+	}
+}
@@ -0,0 +1,770 @@
+package com.wonkglorg.utilitylib.database.pool;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A bounded pool of connections. The initial connections are opened in parallel in the
+ * background, any further connection up to the maximum size is opened lazily by the first caller
+ * that finds no idle connection.
+ * <p>
+ * The size can change at runtime without blocking, shrinking retires connections as they are
+ * released and growing opens the new connections in the background. With
+ * {@link PoolSettings#autoSize(int, int)} the pool resizes itself between the bounds based on how
+ * long callers waited for a connection and how many connections were in use.
+ * <p>
+ * Connections can be taken from named partitions configured with
+ * {@link PoolSettings#partition(String, int)}, each partition can only hold its own amount of
+ * connections at a time so one kind of work can not starve the others. Callers waiting for a
+ * connection are served by priority and then in arrival order, a low priority caller can wait
+ * indefinitely while higher priority callers keep the pool busy.
+ */
+@SuppressWarnings("unused")
+public class ConnectionPool implements AutoCloseable {
+	private static final Logger logger = Logger.getLogger(ConnectionPool.class.getName());
+	private final String name;
+	private final ConnectionFactory factory;
+	private final ReentrantLock lock = new ReentrantLock();
+	/**
+	 * Threads waiting for a connection, highest priority first then in arrival order
+	 */
+	private final NavigableSet<Waiter> waiters = new TreeSet<>(
+			Comparator.comparingInt(Waiter::priority).reversed().thenComparingLong(Waiter::sequence));
+	private final Map<String, Partition> partitions = new LinkedHashMap<>();
+	/**
+	 * The partition each connection in use was taken from
+	 */
+	private final Map<Connection, Partition> checkedOut = new IdentityHashMap<>();
+	/**
+	 * Idle connections, used as a stack so the most recently used (warm) connections are reused
+	 * first
+	 */
+	private final Deque<Connection> idle = new ArrayDeque<>();
+	private final CompletableFuture<Void> ready;
+	private final PoolSettings settings;
+	/**
+	 * Opens connections when growing and runs the auto sizer
+	 */
+	private final ScheduledExecutorService maintenance;
+	/**
+	 * Open connections plus connections currently being opened
+	 */
+	private int total;
+	private int maxSize;
+	private boolean closed;
+	private int waiting;
+	private long waiterSequence;
+	/**
+	 * The highest amount of connections in use since the last auto size check
+	 */
+	private int peakInUse;
+	private long acquireCount;
+	private long waitedCount;
+	private long totalWaitNanos;
+	private long maxWaitNanos;
+	private long createdCount;
+	private long retiredCount;
+	/**
+	 * Acquire counters at the last auto size check
+	 */
+	private long lastAcquireCount;
+	/**
+	 * Time callers waited because the pool had no idle connection and was at its size, unlike
+	 * {@link #totalWaitNanos} this leaves out waits caused by partition limits
+	 */
+	private long poolWaitNanos;
+	private long lastPoolWaitNanos;
+
+	/**
+	 * The partition used when none is specified, it has no own limit unless it is configured
+	 */
+	public static final String DEFAULT_PARTITION = "default";
+	public static final int PRIORITY_LOW = -10;
+	public static final int PRIORITY_NORMAL = 0;
+	public static final int PRIORITY_HIGH = 10;
+
+	/**
+	 * Opens a new physical connection
+	 */
+	@FunctionalInterface
+	public interface ConnectionFactory {
+		Connection create() throws SQLException;
+	}
+
+	/**
+	 * Creates the pool and starts opening the initial connections in the background
+	 *
+	 * @param name the name of the pool used in logs and thread names
+	 * @param factory opens new connections
+	 * @param settings the pool settings
+	 */
+	public ConnectionPool(String name, ConnectionFactory factory, PoolSettings settings) {
+		this.name = name;
+		this.factory = factory;
+		this.settings = settings;
+		this.maxSize = settings.getMaxSize();
+		partitions.put(DEFAULT_PARTITION, new Partition(DEFAULT_PARTITION, Integer.MAX_VALUE));
+		settings.getPartitions()
+				.forEach((partition, limit) -> partitions.put(partition, new Partition(partition, limit)));
+		this.maintenance = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, name + "-maintenance");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.ready = warmUp(settings.getMinIdle(), settings.getWarmUpParallelism());
+		if (settings.isAutoSize()) {
+			long interval = settings.getAutoSizeInterval().toNanos();
+			maintenance.scheduleWithFixedDelay(this::autoSize, interval, interval,
+					TimeUnit.NANOSECONDS);
+		}
+	}
+
+	/**
+	 * Opens the given amount of connections in parallel
+	 *
+	 * @return a future completing once all connections are open or exceptionally with the first
+	 * error
+	 */
+	private CompletableFuture<Void> warmUp(int count, int parallelism) {
+		if (count == 0) {
+			return CompletableFuture.completedFuture(null);
+		}
+		lock.lock();
+		try {
+			//reserve the slots up front so callers wait for these instead of opening more
+			total += count;
+		} finally {
+			lock.unlock();
+		}
+
+		AtomicInteger threadCount = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(count, parallelism),
+				runnable -> {
+					Thread thread = new Thread(runnable, name + "-warmup-" + threadCount.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+		List<CompletableFuture<Void>> connections = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			connections.add(CompletableFuture.runAsync(this::openReserved, executor));
+		}
+		CompletableFuture<Void> all = CompletableFuture.allOf(
+				connections.toArray(CompletableFuture[]::new));
+		all.whenComplete((ignored, error) -> executor.shutdown());
+		return all;
+	}
+
+	/**
+	 * Opens a connection for a slot already counted in {@link #total} and makes it idle
+	 */
+	private void openReserved() {
+		Connection connection;
+		try {
+			connection = factory.create();
+		} catch (SQLException | RuntimeException e) {
+			lock.lock();
+			try {
+				total--;
+				signalNext();
+			} finally {
+				lock.unlock();
+			}
+			throw new PoolException("Failed to open connection for pool " + name, e);
+		}
+		lock.lock();
+		try {
+			createdCount++;
+			if (!closed && total <= maxSize) {
+				idle.offerFirst(connection);
+				signalNext();
+				return;
+			}
+			//the pool shrank or closed while the connection was opened
+			total--;
+			retiredCount++;
+		} finally {
+			lock.unlock();
+		}
+		closeQuietly(connection);
+	}
+
+	/**
+	 * @return a future completing once the initial connections are open, completes exceptionally if
+	 * any of them could not be opened
+	 */
+	public CompletableFuture<Void> ready() {
+		return ready;
+	}
+
+	/**
+	 * Takes an idle connection from the default partition with normal priority
+	 *
+	 * @see #acquire(String, int)
+	 */
+	public Connection acquire() throws SQLException, InterruptedException {
+		return acquire(DEFAULT_PARTITION, PRIORITY_NORMAL);
+	}
+
+	/**
+	 * Takes an idle connection, opens a new one if none is idle and the pool is not full or waits
+	 * for one to be released. Waits as well while the partition holds its maximum amount of
+	 * connections.
+	 *
+	 * @param partitionName the partition to take the connection from
+	 * @param priority callers with a higher priority are served first
+	 * @return the connection, must be given back with {@link #release(Connection)}
+	 * @throws SQLException if a new connection could not be opened or the pool is closed
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public Connection acquire(String partitionName, int priority)
+			throws SQLException, InterruptedException {
+		return acquire(partitionName, priority, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Takes a connection like {@link #acquire(String, int)} but waits at most the given time, opening
+	 * a new connection is not bounded by it
+	 *
+	 * @param partitionName the partition to take the connection from
+	 * @param priority callers with a higher priority are served first
+	 * @param timeoutNanos the longest time to wait, {@link Long#MAX_VALUE} to wait indefinitely
+	 * @return the connection, must be given back with {@link #release(Connection)}
+	 * @throws SQLTimeoutException if no connection became available in time
+	 * @throws SQLException if a new connection could not be opened or the pool is closed
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public Connection acquire(String partitionName, int priority, long timeoutNanos)
+			throws SQLException, InterruptedException {
+		Partition partition = getPartition(partitionName);
+		long waitStart = 0;
+		Waiter waiter = null;
+		boolean poolLimited = false;
+		Connection connection;
+		long remaining = timeoutNanos;
+		lock.lockInterruptibly();
+		try {
+			try {
+				while (true) {
+					if (closed) {
+						throw new SQLException("Connection pool " + name + " is closed");
+					}
+					//only take a connection if no eligible caller waits in front of this one
+					if (partition.inUse < partition.limit && firstEligible() == waiter) {
+						connection = idle.pollFirst();
+						if (connection != null || total < maxSize) {
+							if (connection == null) {
+								total++;
+							}
+							acquired(partition, waitStart, poolLimited);
+							break;
+						}
+					}
+					if (waiter == null) {
+						waitStart = System.nanoTime();
+						waiter = new Waiter(priority, waiterSequence++, partition, lock.newCondition());
+						waiters.add(waiter);
+						partition.waiting++;
+						waiting++;
+						//the new waiter might be first in line now
+						continue;
+					}
+					poolLimited |= isPoolLimited(partition);
+					if (timeoutNanos == Long.MAX_VALUE) {
+						waiter.condition.await();
+					} else if (remaining > 0) {
+						remaining = waiter.condition.awaitNanos(remaining);
+					} else {
+						throw new SQLTimeoutException("Timed out waiting for a connection of pool " + name);
+					}
+				}
+			} finally {
+				if (waiter != null) {
+					waiters.remove(waiter);
+					partition.waiting--;
+					waiting--;
+					//pass on a wake up this waiter can no longer use
+					signalNext();
+				}
+			}
+			if (connection != null) {
+				checkedOut.put(connection, partition);
+				return connection;
+			}
+		} finally {
+			lock.unlock();
+		}
+		return openForCaller(partition);
+	}
+
+	/**
+	 * @return the first waiter whose partition has room for another connection or null if there is
+	 * none, must hold the lock
+	 */
+	private Waiter firstEligible() {
+		for (Waiter waiter : waiters) {
+			if (waiter.partition.inUse < waiter.partition.limit) {
+				return waiter;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Wakes up the waiter next in line, must hold the lock
+	 */
+	private void signalNext() {
+		Waiter waiter = firstEligible();
+		if (waiter != null) {
+			waiter.condition.signal();
+		}
+	}
+
+	/**
+	 * Records an acquire, must hold the lock
+	 *
+	 * @param partition the partition the connection is taken from
+	 * @param waitStart when the caller started waiting or 0 if it did not wait
+	 * @param poolLimited true if the caller waited because the pool was exhausted at some point
+	 */
+	private void acquired(Partition partition, long waitStart, boolean poolLimited) {
+		acquireCount++;
+		partition.acquireCount++;
+		partition.inUse++;
+		partition.peakInUse = Math.max(partition.peakInUse, partition.inUse);
+		if (waitStart != 0) {
+			long waited = System.nanoTime() - waitStart;
+			waitedCount++;
+			totalWaitNanos += waited;
+			maxWaitNanos = Math.max(maxWaitNanos, waited);
+			if (poolLimited) {
+				poolWaitNanos += waited;
+			}
+			partition.waitedCount++;
+			partition.totalWaitNanos += waited;
+			partition.maxWaitNanos = Math.max(partition.maxWaitNanos, waited);
+		}
+		peakInUse = Math.max(peakInUse, total - idle.size());
+	}
+
+	/**
+	 * @return true if a caller of the partition can only wait because the pool has no idle connection
+	 * and is at its size, must hold the lock
+	 */
+	private boolean isPoolLimited(Partition partition) {
+		return partition.inUse < partition.limit && idle.isEmpty() && total >= maxSize;
+	}
+
+	private Connection openForCaller(Partition partition) throws SQLException {
+		try {
+			Connection connection = factory.create();
+			lock.lock();
+			try {
+				createdCount++;
+				checkedOut.put(connection, partition);
+			} finally {
+				lock.unlock();
+			}
+			return connection;
+		} catch (SQLException | RuntimeException e) {
+			lock.lock();
+			try {
+				total--;
+				partition.inUse--;
+				signalNext();
+			} finally {
+				lock.unlock();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Gives a connection back to the pool, a {@link TrackedConnection} is reset to its default state
+	 * first and discarded if that fails. Releasing a connection that is not checked out from this
+	 * pool (twice or from another pool) is logged and otherwise ignored.
+	 *
+	 * @param connection the connection to release
+	 */
+	public void release(Connection connection) {
+		lock.lock();
+		try {
+			Partition partition = checkedOut.remove(connection);
+			if (partition == null) {
+				logger.log(Level.WARNING, "Ignoring release of a connection not checked out from pool "
+						+ name, new IllegalStateException());
+				return;
+			}
+			partition.inUse--;
+		} finally {
+			lock.unlock();
+		}
+		boolean reusable = true;
+		if (connection instanceof TrackedConnection tracked) {
+			try {
+				tracked.reset();
+			} catch (SQLException e) {
+				logger.log(Level.WARNING,
+						"Discarding connection that could not be reset: " + e.getMessage(), e);
+				reusable = false;
+			}
+		}
+		lock.lock();
+		try {
+			if (reusable && !closed && total <= maxSize) {
+				idle.offerFirst(connection);
+				signalNext();
+				return;
+			}
+			//retire broken connections and connections above the size of a shrunk pool
+			total--;
+			retiredCount++;
+			signalNext();
+		} finally {
+			lock.unlock();
+		}
+		closeQuietly(connection);
+	}
+
+	/**
+	 * Changes the maximum size of the pool without blocking. Shrinking closes idle connections above
+	 * the new size right away and retires connections in use when they are released, growing opens
+	 * the new connections in the background.
+	 *
+	 * @param newSize the new maximum size
+	 * @return a future completing once the connections added by growing are open
+	 */
+	public CompletableFuture<Void> resize(int newSize) {
+		if (newSize < 1) {
+			throw new IllegalArgumentException("Pool size must be at least 1");
+		}
+		List<Connection> toClose = new ArrayList<>();
+		int toOpen;
+		lock.lock();
+		try {
+			if (closed) {
+				return CompletableFuture.completedFuture(null);
+			}
+			maxSize = newSize;
+			while (total > newSize && !idle.isEmpty()) {
+				toClose.add(idle.pollLast());
+				total--;
+				retiredCount++;
+			}
+			toOpen = Math.max(0, newSize - total);
+			total += toOpen;
+			//waiters may open connections themselves now
+			waiters.forEach(waiter -> waiter.condition.signal());
+		} finally {
+			lock.unlock();
+		}
+		toClose.forEach(this::closeQuietly);
+		if (toOpen == 0) {
+			return CompletableFuture.completedFuture(null);
+		}
+		List<CompletableFuture<Void>> connections = new ArrayList<>(toOpen);
+		for (int i = 0; i < toOpen; i++) {
+			connections.add(CompletableFuture.runAsync(this::openReserved, maintenance));
+		}
+		return CompletableFuture.allOf(connections.toArray(CompletableFuture[]::new));
+	}
+
+	/**
+	 * Grows the pool if callers waited for the exhausted pool longer than the target on average or
+	 * still wait for it, shrinks it if no one waited for it and less than half of the connections
+	 * were in use since the last check. Callers only waiting for their partition limit do not count,
+	 * more connections would not help them.
+	 */
+	private void autoSize() {
+		int newSize;
+		lock.lock();
+		try {
+			if (closed) {
+				return;
+			}
+			long acquires = acquireCount - lastAcquireCount;
+			long waitNanos = poolWaitNanos - lastPoolWaitNanos;
+			lastAcquireCount = acquireCount;
+			lastPoolWaitNanos = poolWaitNanos;
+			boolean poolLimitedWaiting = false;
+			for (Waiter waiter : waiters) {
+				if (isPoolLimited(waiter.partition())) {
+					poolLimitedWaiting = true;
+					break;
+				}
+			}
+			int peak = Math.max(peakInUse, total - idle.size());
+			peakInUse = total - idle.size();
+
+			long averageWait = acquires == 0 ? 0 : waitNanos / acquires;
+			newSize = maxSize;
+			if (averageWait > settings.getTargetAcquireWait().toNanos() || poolLimitedWaiting) {
+				newSize = Math.min(settings.getAutoSizeMax(), maxSize + Math.max(1, maxSize / 4));
+			} else if (waitNanos == 0 && peak < maxSize / 2) {
+				newSize = Math.max(settings.getAutoSizeMin(), maxSize - 1);
+			}
+		} finally {
+			lock.unlock();
+		}
+		if (newSize != getMaxSize()) {
+			resize(newSize).exceptionally(e -> {
+				logger.log(Level.WARNING, "Failed to grow pool " + name + ": " + e.getMessage(), e);
+				return null;
+			});
+		}
+	}
+
+	/**
+	 * Runs an action on every idle connection while holding the pool lock, the action should not
+	 * talk to the database as every other caller of the pool waits for it
+	 *
+	 * @param action the action to run
+	 */
+	public void forEachIdle(Consumer<Connection> action) {
+		lock.lock();
+		try {
+			idle.forEach(action);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Runs an action on every connection currently in use while holding the pool lock, the action
+	 * must not use the connections as they belong to other threads
+	 *
+	 * @param action the action to run
+	 */
+	public void forEachInUse(Consumer<Connection> action) {
+		lock.lock();
+		try {
+			checkedOut.keySet().forEach(action);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Takes all idle connections out of the pool so they can be used without holding the pool lock,
+	 * each of them must be given back with {@link #returnIdle(Connection, boolean)}
+	 *
+	 * @return the connections that were idle
+	 */
+	public List<Connection> takeIdle() {
+		lock.lock();
+		try {
+			List<Connection> taken = new ArrayList<>(idle);
+			idle.clear();
+			return taken;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Gives back a connection taken with {@link #takeIdle()}
+	 *
+	 * @param connection the connection to give back
+	 * @param reusable false to close the connection instead of keeping it
+	 */
+	public void returnIdle(Connection connection, boolean reusable) {
+		lock.lock();
+		try {
+			if (reusable && !closed && total <= maxSize) {
+				idle.offerFirst(connection);
+				signalNext();
+				return;
+			}
+			total--;
+			retiredCount++;
+			signalNext();
+		} finally {
+			lock.unlock();
+		}
+		closeQuietly(connection);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getMaxSize() {
+		lock.lock();
+		try {
+			return maxSize;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return the amount of open connections including connections being opened
+	 */
+	public int getTotalConnections() {
+		lock.lock();
+		try {
+			return total;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return the amount of idle connections
+	 */
+	public int getIdleConnections() {
+		lock.lock();
+		try {
+			return idle.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @param partitionName the name of the partition
+	 * @return a snapshot of the partition's usage counters
+	 */
+	public PartitionMetrics getPartitionMetrics(String partitionName) {
+		Partition partition = getPartition(partitionName);
+		lock.lock();
+		try {
+			return partition.metrics();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return a snapshot of every partition's usage counters by partition name
+	 */
+	public Map<String, PartitionMetrics> getPartitionMetrics() {
+		Map<String, PartitionMetrics> metrics = new LinkedHashMap<>();
+		lock.lock();
+		try {
+			partitions.forEach((partitionName, partition) -> metrics.put(partitionName,
+					partition.metrics()));
+		} finally {
+			lock.unlock();
+		}
+		return metrics;
+	}
+
+	/**
+	 * @param partitionName the name of the partition
+	 * @return true if the pool has a partition with the given name
+	 */
+	public boolean hasPartition(String partitionName) {
+		return partitions.containsKey(partitionName);
+	}
+
+	private Partition getPartition(String partitionName) {
+		Partition partition = partitions.get(partitionName);
+		if (partition == null) {
+			throw new IllegalArgumentException(
+					"Connection pool " + name + " has no partition " + partitionName);
+		}
+		return partition;
+	}
+
+	/**
+	 * @return a snapshot of the pool size and usage counters
+	 */
+	public PoolMetrics getMetrics() {
+		lock.lock();
+		try {
+			return new PoolMetrics(maxSize, total, idle.size(), waiting, acquireCount, waitedCount,
+					Duration.ofNanos(totalWaitNanos), Duration.ofNanos(maxWaitNanos), createdCount,
+					retiredCount);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Closes all idle connections, connections in use are closed when they are released
+	 */
+	@Override
+	public void close() {
+		List<Connection> toClose;
+		lock.lock();
+		try {
+			closed = true;
+			toClose = new ArrayList<>(idle);
+			total -= idle.size();
+			idle.clear();
+			waiters.forEach(waiter -> waiter.condition.signal());
+		} finally {
+			lock.unlock();
+		}
+		maintenance.shutdownNow();
+		toClose.forEach(this::closeQuietly);
+	}
+
+	private void closeQuietly(Connection connection) {
+		try {
+			connection.close();
+		} catch (SQLException e) {
+			logger.log(Level.WARNING, "Error closing connection: " + e.getMessage(), e);
+		}
+	}
+
+	private record Waiter(int priority, long sequence, Partition partition, Condition condition) {
+	}
+
+	/**
+	 * Limit and counters of a partition, guarded by the pool lock
+	 */
+	private static final class Partition {
+		private final String name;
+		private final int limit;
+		private int inUse;
+		private int waiting;
+		private int peakInUse;
+		private long acquireCount;
+		private long waitedCount;
+		private long totalWaitNanos;
+		private long maxWaitNanos;
+
+		private Partition(String name, int limit) {
+			this.name = name;
+			this.limit = limit;
+		}
+
+		private PartitionMetrics metrics() {
+			return new PartitionMetrics(name, limit, inUse, peakInUse, waiting, acquireCount,
+					waitedCount, Duration.ofNanos(totalWaitNanos), Duration.ofNanos(maxWaitNanos));
+		}
+	}
+
+	/**
+	 * Thrown when the pool could not open a connection in the background
+	 */
+	public static class PoolException extends RuntimeException {
+		public PoolException(String message, Throwable cause) {
+			super(message, cause);
+		}
+	}
+}
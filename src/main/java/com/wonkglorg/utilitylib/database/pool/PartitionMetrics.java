@@ -0,0 +1,30 @@
+package com.wonkglorg.utilitylib.database.pool;
+
+import java.time.Duration;
+
+/**
+ * A snapshot of a partition of a {@link ConnectionPool}, counters are totals since the pool was
+ * created
+ *
+ * @param name the name of the partition
+ * @param maxConnections the maximum amount of connections the partition can hold
+ * @param activeConnections connections currently taken from the partition
+ * @param peakConnections the highest amount of connections the partition held at once
+ * @param waitingThreads threads waiting for a connection of the partition
+ * @param acquireCount connections handed out
+ * @param waitedCount acquires that had to wait
+ * @param totalWait the summed wait time of all acquires
+ * @param maxWait the longest wait of a single acquire
+ */
+@SuppressWarnings("unused")
+public record PartitionMetrics(String name, int maxConnections, int activeConnections,
+		int peakConnections, int waitingThreads, long acquireCount, long waitedCount,
+		Duration totalWait, Duration maxWait) {
+
+	/**
+	 * @return the average wait per acquire
+	 */
+	public Duration averageWait() {
+		return acquireCount == 0 ? Duration.ZERO : totalWait.dividedBy(acquireCount);
+	}
+}
@@ -0,0 +1,37 @@
+package com.wonkglorg.utilitylib.database.pool;
+
+import java.time.Duration;
+
+/**
+ * A snapshot of a {@link ConnectionPool}, counters are totals since the pool was created
+ *
+ * @param maxSize the current maximum size
+ * @param totalConnections open connections including connections being opened
+ * @param idleConnections connections not in use
+ * @param waitingThreads threads waiting for a connection
+ * @param acquireCount connections handed out
+ * @param waitedCount acquires that had to wait
+ * @param totalWait the summed wait time of all acquires
+ * @param maxWait the longest wait of a single acquire
+ * @param createdCount connections opened
+ * @param retiredCount connections closed because the pool shrank or closed
+ */
+@SuppressWarnings("unused")
+public record PoolMetrics(int maxSize, int totalConnections, int idleConnections,
+		int waitingThreads, long acquireCount, long waitedCount, Duration totalWait, Duration maxWait,
+		long createdCount, long retiredCount) {
+
+	/**
+	 * @return connections currently in use
+	 */
+	public int activeConnections() {
+		return totalConnections - idleConnections;
+	}
+
+	/**
+	 * @return the average wait per acquire
+	 */
+	public Duration averageWait() {
+		return acquireCount == 0 ? Duration.ZERO : totalWait.dividedBy(acquireCount);
+	}
+}
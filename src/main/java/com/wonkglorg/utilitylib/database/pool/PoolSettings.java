@@ -0,0 +1,187 @@
+package com.wonkglorg.utilitylib.database.pool;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Settings for a {@link ConnectionPool}
+ */
+@SuppressWarnings("unused")
+public class PoolSettings {
+	private int maxSize = 3;
+	private int minIdle = -1;
+	private int warmUpParallelism = 8;
+	private boolean awaitWarmUp = true;
+	private int autoSizeMin = -1;
+	private int autoSizeMax = -1;
+	private Duration autoSizeInterval = Duration.ofSeconds(30);
+	private Duration targetAcquireWait = Duration.ofMillis(5);
+	private final Map<String, Integer> partitions = new LinkedHashMap<>();
+
+	public PoolSettings() {
+	}
+
+	/**
+	 * Creates settings for a fixed size pool that opens all connections on startup
+	 *
+	 * @param poolSize the size of the pool
+	 */
+	public PoolSettings(int poolSize) {
+		maxSize(poolSize);
+	}
+
+	/**
+	 * Sets the maximum amount of connections the pool opens (default 3)
+	 *
+	 * @return {@link PoolSettings}
+	 */
+	public PoolSettings maxSize(int maxSize) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("Pool size must be at least 1");
+		}
+		this.maxSize = maxSize;
+		return this;
+	}
+
+	/**
+	 * Sets the amount of connections opened on startup, further connections are opened lazily on
+	 * demand up to {@link #maxSize(int)}. Defaults to the max size (everything opened eagerly).
+	 *
+	 * @return {@link PoolSettings}
+	 */
+	public PoolSettings minIdle(int minIdle) {
+		if (minIdle < 0) {
+			throw new IllegalArgumentException("Min idle must not be negative");
+		}
+		this.minIdle = minIdle;
+		return this;
+	}
+
+	/**
+	 * Sets how many connections are opened at the same time during warm up (default 8)
+	 *
+	 * @return {@link PoolSettings}
+	 */
+	public PoolSettings warmUpParallelism(int warmUpParallelism) {
+		if (warmUpParallelism < 1) {
+			throw new IllegalArgumentException("Warm up parallelism must be at least 1");
+		}
+		this.warmUpParallelism = warmUpParallelism;
+		return this;
+	}
+
+	/**
+	 * Sets if creating the database blocks until the initial connections are open and fails if they
+	 * can not be opened (default true). If false creation returns immediately, the warm up result
+	 * is available through the pool's ready future and callers wait for connections on demand.
+	 *
+	 * @return {@link PoolSettings}
+	 */
+	public PoolSettings awaitWarmUp(boolean awaitWarmUp) {
+		this.awaitWarmUp = awaitWarmUp;
+		return this;
+	}
+
+	/**
+	 * Lets the pool resize itself between the bounds, it grows while callers wait longer than
+	 * {@link #targetAcquireWait(Duration)} for a connection and shrinks while less than half of the
+	 * connections are in use. {@link #maxSize(int)} is the starting size.
+	 *
+	 * @param min the smallest size
+	 * @param max the largest size
+	 * @return {@link PoolSettings}
+	 */
+	public PoolSettings autoSize(int min, int max) {
+		if (min < 1 || max < min) {
+			throw new IllegalArgumentException("Auto size bounds must satisfy 1 <= min <= max");
+		}
+		this.autoSizeMin = min;
+		this.autoSizeMax = max;
+		return this;
+	}
+
+	/**
+	 * Sets how often the auto sizer checks the pool (default 30 seconds)
+	 *
+	 * @return {@link PoolSettings}
+	 */
+	public PoolSettings autoSizeInterval(Duration autoSizeInterval) {
+		if (autoSizeInterval.isNegative() || autoSizeInterval.isZero()) {
+			throw new IllegalArgumentException("Auto size interval must be positive");
+		}
+		this.autoSizeInterval = autoSizeInterval;
+		return this;
+	}
+
+	/**
+	 * Sets the average acquire wait above which the auto sizer grows the pool (default 5ms)
+	 *
+	 * @return {@link PoolSettings}
+	 */
+	public PoolSettings targetAcquireWait(Duration targetAcquireWait) {
+		this.targetAcquireWait = targetAcquireWait;
+		return this;
+	}
+
+	/**
+	 * Adds a partition that can hold at most the given amount of connections at a time. Connections
+	 * taken without a partition use {@link ConnectionPool#DEFAULT_PARTITION}, which is only limited
+	 * by the pool size unless it is configured here as well.
+	 *
+	 * @param name the name of the partition
+	 * @param maxConnections the maximum amount of connections the partition can hold
+	 * @return {@link PoolSettings}
+	 */
+	public PoolSettings partition(String name, int maxConnections) {
+		if (maxConnections < 1) {
+			throw new IllegalArgumentException("Partition size must be at least 1");
+		}
+		partitions.put(name, maxConnections);
+		return this;
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public int getMinIdle() {
+		return minIdle < 0 ? maxSize : Math.min(minIdle, maxSize);
+	}
+
+	public int getWarmUpParallelism() {
+		return warmUpParallelism;
+	}
+
+	public boolean isAwaitWarmUp() {
+		return awaitWarmUp;
+	}
+
+	public boolean isAutoSize() {
+		return autoSizeMax > 0;
+	}
+
+	public int getAutoSizeMin() {
+		return autoSizeMin;
+	}
+
+	public int getAutoSizeMax() {
+		return autoSizeMax;
+	}
+
+	public Duration getAutoSizeInterval() {
+		return autoSizeInterval;
+	}
+
+	public Duration getTargetAcquireWait() {
+		return targetAcquireWait;
+	}
+
+	/**
+	 * @return the configured partition limits by partition name
+	 */
+	public Map<String, Integer> getPartitions() {
+		return Collections.unmodifiableMap(new LinkedHashMap<>(partitions));
+	}
+}
@@ -0,0 +1,599 @@
+package com.wonkglorg.utilitylib.database.pool;
+
+import com.wonkglorg.utilitylib.database.exceptions.DeadlineExceededException;
+
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.CallableStatement;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.NClob;
+import java.sql.PreparedStatement;
+import java.sql.SQLClientInfoException;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLWarning;
+import java.sql.SQLXML;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.sql.Struct;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.Executor;
+
+/**
+ * A pooled connection remembering its session state (auto commit, isolation, read only, catalog
+ * and schema). Setting a value the connection already has does not reach the driver, and
+ * {@link #reset()} restores the pool's defaults before the connection is handed out again.
+ * <p>
+ * Only changes made through the JDBC setters are tracked, changing the session with sql (like
+ * {@code USE db}) leaves the tracked state outdated.
+ * <p>
+ * Statements created while a {@link #setDeadline(long) deadline} is set get the remaining time as
+ * their query timeout, and all statements of the current use can be {@link #cancel() cancelled}
+ * from another thread.
+ */
+@SuppressWarnings("unused")
+public class TrackedConnection implements Connection {
+	private final Connection delegate;
+	private Boolean autoCommit;
+	private Integer transactionIsolation;
+	private Boolean readOnly;
+	private String catalog;
+	private String schema;
+	/**
+	 * Whether catalog and schema are known, they can be null as values
+	 */
+	private boolean catalogKnown;
+	private boolean schemaKnown;
+
+	private Boolean defaultAutoCommit;
+	private Integer defaultTransactionIsolation;
+	private Boolean defaultReadOnly;
+	private volatile String defaultCatalog;
+	private String defaultSchema;
+	private boolean defaultCatalogKnown;
+	private boolean defaultSchemaKnown;
+	/**
+	 * {@link System#nanoTime()} statements must finish by, 0 if there is none
+	 */
+	private volatile long deadline;
+	/**
+	 * Whether the deadline was chosen by the caller of the call rather than the database wide timeout
+	 */
+	private volatile boolean callerDeadline;
+	/**
+	 * Statements created since the last reset, kept to cancel them
+	 */
+	private final List<Statement> statements = new ArrayList<>();
+
+	/**
+	 * Wraps a connection, reads its current state and uses it as the default state
+	 *
+	 * @param delegate the physical connection
+	 */
+	public TrackedConnection(Connection delegate) {
+		this.delegate = delegate;
+		readState();
+		captureDefaults();
+	}
+
+	/**
+	 * Reads the state from the driver once, values a driver can not report stay untracked
+	 */
+	private void readState() {
+		try {
+			autoCommit = delegate.getAutoCommit();
+		} catch (SQLException | RuntimeException ignored) {
+		}
+		try {
+			transactionIsolation = delegate.getTransactionIsolation();
+		} catch (SQLException | RuntimeException ignored) {
+		}
+		try {
+			readOnly = delegate.isReadOnly();
+		} catch (SQLException | RuntimeException ignored) {
+		}
+		try {
+			catalog = delegate.getCatalog();
+			catalogKnown = true;
+		} catch (SQLException | RuntimeException ignored) {
+		}
+		try {
+			schema = delegate.getSchema();
+			schemaKnown = true;
+		} catch (SQLException | RuntimeException | AbstractMethodError ignored) {
+		}
+	}
+
+	/**
+	 * Uses the current state as the state {@link #reset()} restores
+	 */
+	public void captureDefaults() {
+		defaultAutoCommit = autoCommit;
+		defaultTransactionIsolation = transactionIsolation;
+		defaultReadOnly = readOnly;
+		defaultCatalog = catalog;
+		defaultCatalogKnown = catalogKnown;
+		defaultSchema = schema;
+		defaultSchemaKnown = schemaKnown;
+	}
+
+	/**
+	 * Sets the catalog {@link #reset()} restores, can be called while the connection is in use
+	 *
+	 * @param catalog the default catalog
+	 */
+	public void setDefaultCatalog(String catalog) {
+		this.defaultCatalog = catalog;
+		this.defaultCatalogKnown = true;
+	}
+
+	/**
+	 * Restores the default state, rolls back an open transaction first and forgets the deadline
+	 *
+	 * @throws SQLException if the state could not be restored, the connection should be discarded
+	 */
+	public void reset() throws SQLException {
+		deadline = 0;
+		callerDeadline = false;
+		synchronized (statements) {
+			statements.clear();
+		}
+		if (Boolean.FALSE.equals(autoCommit)) {
+			delegate.rollback();
+		}
+		if (defaultAutoCommit != null) {
+			setAutoCommit(defaultAutoCommit);
+		}
+		if (defaultReadOnly != null) {
+			setReadOnly(defaultReadOnly);
+		}
+		if (defaultTransactionIsolation != null) {
+			setTransactionIsolation(defaultTransactionIsolation);
+		}
+		if (defaultCatalogKnown && defaultCatalog != null) {
+			setCatalog(defaultCatalog);
+		}
+		if (defaultSchemaKnown && defaultSchema != null) {
+			setSchema(defaultSchema);
+		}
+	}
+
+	/**
+	 * Sets the deadline statements created from now on must finish by, their query timeout is the
+	 * remaining time rounded up to whole seconds. Cleared by {@link #reset()}.
+	 *
+	 * @param deadline the {@link System#nanoTime()} to finish by, 0 for none
+	 */
+	public void setDeadline(long deadline) {
+		setDeadline(deadline, false);
+	}
+
+	/**
+	 * Sets the deadline like {@link #setDeadline(long)}
+	 *
+	 * @param deadline the {@link System#nanoTime()} to finish by, 0 for none
+	 * @param callerDeadline true if the caller chose the deadline for this call, missing it then says
+	 * nothing about the health of the database
+	 */
+	public void setDeadline(long deadline, boolean callerDeadline) {
+		this.deadline = deadline;
+		this.callerDeadline = deadline != 0 && callerDeadline;
+	}
+
+	public long getDeadline() {
+		return deadline;
+	}
+
+	public boolean isCallerDeadline() {
+		return callerDeadline;
+	}
+
+	/**
+	 * Cancels the statements created since the last reset that are still running, can be called
+	 * from any thread
+	 */
+	public void cancel() {
+		List<Statement> running;
+		synchronized (statements) {
+			running = new ArrayList<>(statements);
+		}
+		for (Statement statement : running) {
+			try {
+				statement.cancel();
+			} catch (SQLException | RuntimeException ignored) {
+				//already closed or the driver can not cancel
+			}
+		}
+	}
+
+	/**
+	 * Applies the deadline to a new statement and keeps it for {@link #cancel()}
+	 */
+	private <S extends Statement> S track(S statement) throws SQLException {
+		long currentDeadline = deadline;
+		if (currentDeadline != 0) {
+			long remaining = currentDeadline - System.nanoTime();
+			if (remaining <= 0) {
+				statement.close();
+				throw new DeadlineExceededException("Deadline exceeded before the statement started");
+			}
+			statement.setQueryTimeout((int) Math.min(Integer.MAX_VALUE,
+					(remaining + 999_999_999L) / 1_000_000_000L));
+		}
+		synchronized (statements) {
+			if (statements.size() >= 64) {
+				statements.removeIf(TrackedConnection::isClosedQuietly);
+			}
+			statements.add(statement);
+		}
+		return statement;
+	}
+
+	private static boolean isClosedQuietly(Statement statement) {
+		try {
+			return statement.isClosed();
+		} catch (SQLException | RuntimeException e) {
+			return true;
+		}
+	}
+
+	/**
+	 * @return the physical connection
+	 */
+	public Connection getDelegate() {
+		return delegate;
+	}
+
+	@Override
+	public void setAutoCommit(boolean autoCommit) throws SQLException {
+		if (this.autoCommit != null && this.autoCommit == autoCommit) {
+			return;
+		}
+		delegate.setAutoCommit(autoCommit);
+		this.autoCommit = autoCommit;
+	}
+
+	@Override
+	public boolean getAutoCommit() throws SQLException {
+		if (autoCommit == null) {
+			autoCommit = delegate.getAutoCommit();
+		}
+		return autoCommit;
+	}
+
+	@Override
+	public void setTransactionIsolation(int level) throws SQLException {
+		if (transactionIsolation != null && transactionIsolation == level) {
+			return;
+		}
+		delegate.setTransactionIsolation(level);
+		this.transactionIsolation = level;
+	}
+
+	@Override
+	public int getTransactionIsolation() throws SQLException {
+		if (transactionIsolation == null) {
+			transactionIsolation = delegate.getTransactionIsolation();
+		}
+		return transactionIsolation;
+	}
+
+	@Override
+	public void setReadOnly(boolean readOnly) throws SQLException {
+		if (this.readOnly != null && this.readOnly == readOnly) {
+			return;
+		}
+		delegate.setReadOnly(readOnly);
+		this.readOnly = readOnly;
+	}
+
+	@Override
+	public boolean isReadOnly() throws SQLException {
+		if (readOnly == null) {
+			readOnly = delegate.isReadOnly();
+		}
+		return readOnly;
+	}
+
+	/**
+	 * Switches the catalog, drivers that silently ignore the switch (like PostgreSQL) make it fail
+	 *
+	 * @throws SQLFeatureNotSupportedException if the driver did not switch the catalog
+	 */
+	@Override
+	public void setCatalog(String catalog) throws SQLException {
+		if (catalogKnown && Objects.equals(this.catalog, catalog)) {
+			return;
+		}
+		delegate.setCatalog(catalog);
+		String current = delegate.getCatalog();
+		if (catalog != null && !catalog.equalsIgnoreCase(current)) {
+			throw new SQLFeatureNotSupportedException(
+					"The driver did not switch from catalog " + current + " to " + catalog);
+		}
+		this.catalog = catalog;
+		this.catalogKnown = true;
+	}
+
+	@Override
+	public String getCatalog() throws SQLException {
+		if (!catalogKnown) {
+			catalog = delegate.getCatalog();
+			catalogKnown = true;
+		}
+		return catalog;
+	}
+
+	@Override
+	public void setSchema(String schema) throws SQLException {
+		if (schemaKnown && Objects.equals(this.schema, schema)) {
+			return;
+		}
+		delegate.setSchema(schema);
+		this.schema = schema;
+		this.schemaKnown = true;
+	}
+
+	@Override
+	public String getSchema() throws SQLException {
+		if (!schemaKnown) {
+			schema = delegate.getSchema();
+			schemaKnown = true;
+		}
+		return schema;
+	}
+
+	@Override
+	public Statement createStatement() throws SQLException {
+		return track(delegate.createStatement());
+	}
+
+	@Override
+	public PreparedStatement prepareStatement(String sql) throws SQLException {
+		return track(delegate.prepareStatement(sql));
+	}
+
+	@Override
+	public CallableStatement prepareCall(String sql) throws SQLException {
+		return track(delegate.prepareCall(sql));
+	}
+
+	@Override
+	public String nativeSQL(String sql) throws SQLException {
+		return delegate.nativeSQL(sql);
+	}
+
+	@Override
+	public void commit() throws SQLException {
+		delegate.commit();
+	}
+
+	@Override
+	public void rollback() throws SQLException {
+		delegate.rollback();
+	}
+
+	@Override
+	public void close() throws SQLException {
+		delegate.close();
+	}
+
+	@Override
+	public boolean isClosed() throws SQLException {
+		return delegate.isClosed();
+	}
+
+	@Override
+	public DatabaseMetaData getMetaData() throws SQLException {
+		return delegate.getMetaData();
+	}
+
+	@Override
+	public SQLWarning getWarnings() throws SQLException {
+		return delegate.getWarnings();
+	}
+
+	@Override
+	public void clearWarnings() throws SQLException {
+		delegate.clearWarnings();
+	}
+
+	@Override
+	public Statement createStatement(int resultSetType, int resultSetConcurrency)
+			throws SQLException {
+		return track(delegate.createStatement(resultSetType, resultSetConcurrency));
+	}
+
+	@Override
+	public PreparedStatement prepareStatement(String sql, int resultSetType,
+			int resultSetConcurrency) throws SQLException {
+		return track(delegate.prepareStatement(sql, resultSetType, resultSetConcurrency));
+	}
+
+	@Override
+	public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency)
+			throws SQLException {
+		return track(delegate.prepareCall(sql, resultSetType, resultSetConcurrency));
+	}
+
+	@Override
+	public Map<String, Class<?>> getTypeMap() throws SQLException {
+		return delegate.getTypeMap();
+	}
+
+	@Override
+	public void setTypeMap(Map<String, Class<?>> map) throws SQLException {
+		delegate.setTypeMap(map);
+	}
+
+	@Override
+	public void setHoldability(int holdability) throws SQLException {
+		delegate.setHoldability(holdability);
+	}
+
+	@Override
+	public int getHoldability() throws SQLException {
+		return delegate.getHoldability();
+	}
+
+	@Override
+	public Savepoint setSavepoint() throws SQLException {
+		return delegate.setSavepoint();
+	}
+
+	@Override
+	public Savepoint setSavepoint(String name) throws SQLException {
+		return delegate.setSavepoint(name);
+	}
+
+	@Override
+	public void rollback(Savepoint savepoint) throws SQLException {
+		delegate.rollback(savepoint);
+	}
+
+	@Override
+	public void releaseSavepoint(Savepoint savepoint) throws SQLException {
+		delegate.releaseSavepoint(savepoint);
+	}
+
+	@Override
+	public Statement createStatement(int resultSetType, int resultSetConcurrency,
+			int resultSetHoldability) throws SQLException {
+		return track(
+				delegate.createStatement(resultSetType, resultSetConcurrency, resultSetHoldability));
+	}
+
+	@Override
+	public PreparedStatement prepareStatement(String sql, int resultSetType,
+			int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+		return track(delegate.prepareStatement(sql, resultSetType, resultSetConcurrency,
+				resultSetHoldability));
+	}
+
+	@Override
+	public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency,
+			int resultSetHoldability) throws SQLException {
+		return track(delegate.prepareCall(sql, resultSetType, resultSetConcurrency,
+				resultSetHoldability));
+	}
+
+	@Override
+	public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys)
+			throws SQLException {
+		return track(delegate.prepareStatement(sql, autoGeneratedKeys));
+	}
+
+	@Override
+	public PreparedStatement prepareStatement(String sql, int[] columnIndexes) throws SQLException {
+		return track(delegate.prepareStatement(sql, columnIndexes));
+	}
+
+	@Override
+	public PreparedStatement prepareStatement(String sql, String[] columnNames)
+			throws SQLException {
+		return track(delegate.prepareStatement(sql, columnNames));
+	}
+
+	@Override
+	public Clob createClob() throws SQLException {
+		return delegate.createClob();
+	}
+
+	@Override
+	public Blob createBlob() throws SQLException {
+		return delegate.createBlob();
+	}
+
+	@Override
+	public NClob createNClob() throws SQLException {
+		return delegate.createNClob();
+	}
+
+	@Override
+	public SQLXML createSQLXML() throws SQLException {
+		return delegate.createSQLXML();
+	}
+
+	@Override
+	public boolean isValid(int timeout) throws SQLException {
+		return delegate.isValid(timeout);
+	}
+
+	@Override
+	public void setClientInfo(String name, String value) throws SQLClientInfoException {
+		delegate.setClientInfo(name, value);
+	}
+
+	@Override
+	public void setClientInfo(Properties properties) throws SQLClientInfoException {
+		delegate.setClientInfo(properties);
+	}
+
+	@Override
+	public String getClientInfo(String name) throws SQLException {
+		return delegate.getClientInfo(name);
+	}
+
+	@Override
+	public Properties getClientInfo() throws SQLException {
+		return delegate.getClientInfo();
+	}
+
+	@Override
+	public Array createArrayOf(String typeName, Object[] elements) throws SQLException {
+		return delegate.createArrayOf(typeName, elements);
+	}
+
+	@Override
+	public Struct createStruct(String typeName, Object[] attributes) throws SQLException {
+		return delegate.createStruct(typeName, attributes);
+	}
+
+	@Override
+	public void abort(Executor executor) throws SQLException {
+		delegate.abort(executor);
+	}
+
+	@Override
+	public void setNetworkTimeout(Executor executor, int milliseconds) throws SQLException {
+		delegate.setNetworkTimeout(executor, milliseconds);
+	}
+
+	@Override
+	public int getNetworkTimeout() throws SQLException {
+		return delegate.getNetworkTimeout();
+	}
+
+	@Override
+	public void beginRequest() throws SQLException {
+		delegate.beginRequest();
+	}
+
+	@Override
+	public void endRequest() throws SQLException {
+		delegate.endRequest();
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> T unwrap(Class<T> type) throws SQLException {
+		if (type.isInstance(this)) {
+			return (T) this;
+		}
+		if (type.isInstance(delegate)) {
+			return (T) delegate;
+		}
+		return delegate.unwrap(type);
+	}
+
+	@Override
+	public boolean isWrapperFor(Class<?> type) throws SQLException {
+		return type.isInstance(this) || type.isInstance(delegate) || delegate.isWrapperFor(type);
+	}
+}
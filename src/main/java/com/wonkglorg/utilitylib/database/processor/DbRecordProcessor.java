@@ -0,0 +1,167 @@
+package com.wonkglorg.utilitylib.database.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.RecordComponentElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Generates a {@link GeneratedRecordMapper} for every record annotated with
+ * {@link com.wonkglorg.utilitylib.database.annotations.DbRecord}. Primitive and String components
+ * are read and bound with the plain JDBC getters and setters, every other type goes through the
+ * type handler registered on the database.
+ * <p>
+ * The processor is registered as a service, it runs automatically when the library is on the
+ * annotation processor path of a project.
+ */
+@SupportedAnnotationTypes("com.wonkglorg.utilitylib.database.annotations.DbRecord")
+public class DbRecordProcessor extends AbstractProcessor {
+	/**
+	 * Primitive types and String mapped to their JDBC getter / setter suffix
+	 */
+	private static final Map<String, String> DIRECT_TYPES = Map.of(//
+			"boolean", "Boolean",//
+			"byte", "Byte",//
+			"short", "Short",//
+			"int", "Int",//
+			"long", "Long",//
+			"float", "Float",//
+			"double", "Double",//
+			"java.lang.String", "String");
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		for (TypeElement annotation : annotations) {
+			for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+				if (element.getKind() != ElementKind.RECORD) {
+					error(element, "@DbRecord can only be used on records");
+					continue;
+				}
+				if (element.getModifiers().contains(Modifier.PRIVATE)) {
+					error(element, "@DbRecord records must not be private");
+					continue;
+				}
+				try {
+					generate((TypeElement) element);
+				} catch (IOException e) {
+					error(element, "Failed to generate record mapper: " + e.getMessage());
+				}
+			}
+		}
+		return true;
+	}
+
+	private void generate(TypeElement record) throws IOException {
+		PackageElement packageElement = processingEnv.getElementUtils().getPackageOf(record);
+		String packageName = packageElement.isUnnamed() ? "" : packageElement.getQualifiedName()
+				.toString();
+		String binaryName = processingEnv.getElementUtils().getBinaryName(record).toString();
+		String simpleName = (packageName.isEmpty() ? binaryName : binaryName.substring(
+				packageName.length() + 1)) + GeneratedRecordMapper.SUFFIX;
+		String recordType = record.getQualifiedName().toString();
+		List<? extends RecordComponentElement> components = record.getRecordComponents();
+
+		StringBuilder source = new StringBuilder();
+		if (!packageName.isEmpty()) {
+			source.append("package ").append(packageName).append(";\n\n");
+		}
+		source.append("/**\n * Generated by ").append(DbRecordProcessor.class.getName())
+				.append(" for {@link ").append(recordType).append("}, do not edit\n */\n");
+		source.append("@SuppressWarnings({\"unchecked\", \"rawtypes\"})\n");
+		source.append("public final class ").append(simpleName)
+				.append(" implements com.wonkglorg.utilitylib.database.processor.GeneratedRecordMapper<")
+				.append(recordType).append("> {\n\n");
+
+		source.append("\t@Override\n\tpublic ").append(recordType)
+				.append(" read(com.wonkglorg.utilitylib.database.Database database, java.sql.ResultSet resultSet, boolean useIndex, int offset) throws java.sql.SQLException {\n");
+		source.append("\t\tif (useIndex) {\n");
+		appendConstructorCall(source, recordType, components, true);
+		source.append("\t\t}\n");
+		appendConstructorCall(source, recordType, components, false);
+		source.append("\t}\n\n");
+
+		source.append("\t@Override\n\tpublic void write(com.wonkglorg.utilitylib.database.Database database, ")
+				.append(recordType)
+				.append(" record, java.sql.PreparedStatement statement, int offset) throws java.sql.SQLException {\n");
+		for (int i = 0; i < components.size(); i++) {
+			RecordComponentElement component = components.get(i);
+			String type = typeName(component.asType());
+			String direct = DIRECT_TYPES.get(type);
+			String accessor = "record." + component.getSimpleName() + "()";
+			if (direct != null) {
+				source.append("\t\tstatement.set").append(direct).append("(offset + ").append(i + 1)
+						.append(", ").append(accessor).append(");\n");
+			} else {
+				source.append("\t\tcom.wonkglorg.utilitylib.database.processor.GeneratedRecordMapper.handler(database, ")
+						.append(type).append(".class).setParameter(statement, offset + ").append(i + 1)
+						.append(", ").append(accessor).append(");\n");
+			}
+		}
+		source.append("\t}\n}\n");
+
+		String qualifiedName = packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
+		JavaFileObject file = processingEnv.getFiler().createSourceFile(qualifiedName, record);
+		try (Writer writer = file.openWriter()) {
+			writer.write(source.toString());
+		}
+	}
+
+	private void appendConstructorCall(StringBuilder source, String recordType,
+			List<? extends RecordComponentElement> components, boolean useIndex) {
+		String indent = useIndex ? "\t\t\t" : "\t\t";
+		source.append(indent).append("return new ").append(recordType).append("(");
+		for (int i = 0; i < components.size(); i++) {
+			RecordComponentElement component = components.get(i);
+			String type = typeName(component.asType());
+			String direct = DIRECT_TYPES.get(type);
+			String column = useIndex ? "offset + " + (i + 1) : "\"" + component.getSimpleName() + "\"";
+			source.append(i == 0 ? "\n" : ",\n").append(indent).append("\t\t");
+			if (direct != null) {
+				source.append("resultSet.get").append(direct).append("(").append(column).append(")");
+			} else {
+				source.append("(").append(type).append(") com.wonkglorg.utilitylib.database.processor.GeneratedRecordMapper.handler(database, ")
+						.append(type).append(".class).getParameter(resultSet, ").append(column).append(")");
+			}
+		}
+		source.append(");\n");
+	}
+
+	/**
+	 * @return the erased type name usable in a class literal
+	 */
+	private String typeName(TypeMirror type) {
+		if (type.getKind().isPrimitive()) {
+			return type.toString();
+		}
+		TypeMirror erased = processingEnv.getTypeUtils().erasure(type);
+		if (erased.getKind() == TypeKind.DECLARED) {
+			return ((TypeElement) processingEnv.getTypeUtils().asElement(erased)).getQualifiedName()
+					.toString();
+		}
+		return erased.toString();
+	}
+
+	private void error(Element element, String message) {
+		processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+	}
+}
@@ -0,0 +1,58 @@
+package com.wonkglorg.utilitylib.database.processor;
+
+import com.wonkglorg.util.interfaces.functional.database.DataTypeHandler;
+import com.wonkglorg.utilitylib.database.Database;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Implemented by the mappers the {@link DbRecordProcessor} generates for
+ * {@link com.wonkglorg.utilitylib.database.annotations.DbRecord} annotated records
+ *
+ * @param <T> the record type
+ */
+public interface GeneratedRecordMapper<T extends Record> {
+	/**
+	 * Suffix appended to the binary name of the record to get the generated mapper class
+	 */
+	String SUFFIX = "_DbMapper";
+
+	/**
+	 * Creates a record from the current row of the result set
+	 *
+	 * @param database the database whose type handlers are used for non primitive components
+	 * @param resultSet the result set positioned on the row to map
+	 * @param useIndex true to read columns by index, false to read them by component name
+	 * @param offset the column offset when reading by index (default:0)
+	 * @return the record
+	 * @throws SQLException if a column could not be read
+	 */
+	T read(Database database, ResultSet resultSet, boolean useIndex, int offset)
+			throws SQLException;
+
+	/**
+	 * Binds every record component to the statement in declaration order
+	 *
+	 * @param database the database whose type handlers are used for non primitive components
+	 * @param record the record to bind
+	 * @param statement the statement to bind to
+	 * @param offset the offset to start (default:0) starts at index 1
+	 * @throws SQLException if a value could not be bound
+	 */
+	void write(Database database, T record, PreparedStatement statement, int offset)
+			throws SQLException;
+
+	/**
+	 * Used by generated code to get a type handler, fails the same way the reflection based
+	 * adapter does if none is registered
+	 */
+	static <V> DataTypeHandler<V> handler(Database database, Class<V> type) throws SQLException {
+		DataTypeHandler<V> handler = database.getDataMapper(type);
+		if (handler == null) {
+			throw new SQLException("Data type " + type + " does not have a valid mapping function");
+		}
+		return handler;
+	}
+}
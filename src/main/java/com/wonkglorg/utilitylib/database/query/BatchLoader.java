@@ -0,0 +1,223 @@
+package com.wonkglorg.utilitylib.database.query;
+
+import com.wonkglorg.utilitylib.database.response.DatabaseSingleObjResponse;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Coalesces single key lookups from many callers into multi key queries. Keys requested within
+ * the batch window are collected until the window ends or the batch is full and then loaded with
+ * one {@link KeyLookup#findAll(Collection)}, each caller's future completes with its own row.
+ * Callers asking for the same key in the same window share one future.
+ *
+ * @param <K> the type of the key
+ * @param <T> the type of the loaded rows
+ * @author Wonkglorg
+ */
+@SuppressWarnings("unused")
+public class BatchLoader<K, T> implements AutoCloseable {
+	private final KeyLookup<K, T> lookup;
+	private final int maxBatchSize;
+	private final long windowNanos;
+	private final ScheduledExecutorService scheduler;
+	private final ExecutorService executor;
+	private final Object lock = new Object();
+	private final LongAdder loadCount = new LongAdder();
+	private final LongAdder batchCount = new LongAdder();
+	private final LongAdder keyCount = new LongAdder();
+	private Map<K, CompletableFuture<T>> pending = new LinkedHashMap<>();
+	private ScheduledFuture<?> timer;
+	private boolean closed;
+
+	/**
+	 * @param lookup loads the collected keys
+	 * @param maxBatchSize the amount of distinct keys after which a batch loads right away
+	 * @param window how long the first key of a batch waits for others
+	 */
+	public BatchLoader(KeyLookup<K, T> lookup, int maxBatchSize, Duration window) {
+		if (maxBatchSize < 1) {
+			throw new IllegalArgumentException("Batch size must be at least 1");
+		}
+		this.lookup = lookup;
+		this.maxBatchSize = maxBatchSize;
+		this.windowNanos = window.toNanos();
+		AtomicInteger threadCount = new AtomicInteger();
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "BatchLoader-timer");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.executor = Executors.newCachedThreadPool(runnable -> {
+			Thread thread = new Thread(runnable, "BatchLoader-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Creates a loader collecting up to the lookup's bucket size of keys for at most 1ms
+	 *
+	 * @param lookup loads the collected keys
+	 */
+	public BatchLoader(KeyLookup<K, T> lookup) {
+		this(lookup, lookup.getMaxBucketSize(), Duration.ofMillis(1));
+	}
+
+	/**
+	 * Loads a single key together with the keys other callers request at the same time
+	 *
+	 * @param key the key to load
+	 * @return a future completing with the row or null if there is none, every caller gets its own
+	 * future so cancelling or completing it does not affect other callers of the same key
+	 */
+	public CompletableFuture<T> load(K key) {
+		if (key == null) {
+			return CompletableFuture.completedFuture(null);
+		}
+		loadCount.increment();
+		Map<K, CompletableFuture<T>> full = null;
+		CompletableFuture<T> future;
+		synchronized (lock) {
+			if (closed) {
+				return CompletableFuture.failedFuture(new IllegalStateException("BatchLoader is closed"));
+			}
+			future = pending.get(key);
+			if (future != null) {
+				return future.copy();
+			}
+			future = new CompletableFuture<>();
+			pending.put(key, future);
+			if (pending.size() >= maxBatchSize) {
+				full = takePending();
+			} else if (pending.size() == 1) {
+				timer = scheduler.schedule(this::flush, windowNanos, TimeUnit.NANOSECONDS);
+			}
+		}
+		if (full != null) {
+			dispatch(full);
+		}
+		return future.copy();
+	}
+
+	/**
+	 * Loads several keys, they are batched with the keys of other callers
+	 *
+	 * @param keys the keys to load
+	 * @return a future completing with the rows by key, keys without a row are missing
+	 */
+	public CompletableFuture<Map<K, T>> loadAll(Collection<? extends K> keys) {
+		Map<K, CompletableFuture<T>> futures = new LinkedHashMap<>();
+		for (K key : keys) {
+			if (key != null) {
+				futures.computeIfAbsent(key, this::load);
+			}
+		}
+		return CompletableFuture.allOf(futures.values().toArray(CompletableFuture[]::new))
+				.thenApply(ignored -> {
+					Map<K, T> rows = new HashMap<>();
+					futures.forEach((key, future) -> {
+						T row = future.join();
+						if (row != null) {
+							rows.put(key, row);
+						}
+					});
+					return rows;
+				});
+	}
+
+	/**
+	 * Loads the collected keys right away
+	 */
+	public void flush() {
+		Map<K, CompletableFuture<T>> batch;
+		synchronized (lock) {
+			if (pending.isEmpty()) {
+				return;
+			}
+			batch = takePending();
+		}
+		dispatch(batch);
+	}
+
+	/**
+	 * Detaches the pending batch, must hold the lock
+	 */
+	private Map<K, CompletableFuture<T>> takePending() {
+		Map<K, CompletableFuture<T>> batch = pending;
+		pending = new LinkedHashMap<>();
+		if (timer != null) {
+			timer.cancel(false);
+			timer = null;
+		}
+		return batch;
+	}
+
+	private void dispatch(Map<K, CompletableFuture<T>> batch) {
+		executor.execute(() -> {
+			batchCount.increment();
+			keyCount.add(batch.size());
+			try {
+				List<K> keys = new ArrayList<>(batch.keySet());
+				DatabaseSingleObjResponse<Map<K, T>> response = lookup.findAll(keys);
+				if (response.hasError()) {
+					batch.values()
+							.forEach(future -> future.completeExceptionally(response.getException()));
+					return;
+				}
+				Map<K, T> rows = response.getData();
+				batch.forEach((key, future) -> future.complete(rows.get(key)));
+			} catch (RuntimeException e) {
+				//a throwing lookup or key function must not leave callers waiting forever
+				batch.values().forEach(future -> future.completeExceptionally(e));
+			}
+		});
+	}
+
+	/**
+	 * @return the amount of {@link #load(Object)} calls
+	 */
+	public long getLoadCount() {
+		return loadCount.sum();
+	}
+
+	/**
+	 * @return the amount of batches loaded, each costs one query per chunk of the lookup
+	 */
+	public long getBatchCount() {
+		return batchCount.sum();
+	}
+
+	/**
+	 * @return the amount of distinct keys loaded over all batches
+	 */
+	public long getKeyCount() {
+		return keyCount.sum();
+	}
+
+	/**
+	 * Loads the collected keys and stops accepting new ones
+	 */
+	@Override
+	public void close() {
+		synchronized (lock) {
+			closed = true;
+		}
+		flush();
+		scheduler.shutdownNow();
+		executor.shutdown();
+	}
+}
@@ -0,0 +1,83 @@
+package com.wonkglorg.utilitylib.database.query;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/**
+ * Splits a range of slice indices in halves until a single slice is left and runs it as a
+ * blocking operation, so the pool starts extra threads while slices wait for a connection or the
+ * database
+ */
+final class BlockingSliceTask extends RecursiveAction {
+	private final int from;
+	private final int to;
+	private final IntConsumer action;
+
+	BlockingSliceTask(int from, int to, IntConsumer action) {
+		this.from = from;
+		this.to = to;
+		this.action = action;
+	}
+
+	/**
+	 * Runs the action for every index from 0 to count, in parallel on the pool if requested
+	 *
+	 * @param pool the pool to run on
+	 * @param count the amount of slices
+	 * @param parallel false to run the slices one after another on the calling thread
+	 * @param action runs a slice by index
+	 */
+	static void run(ForkJoinPool pool, int count, boolean parallel, IntConsumer action) {
+		if (!parallel || count <= 1) {
+			for (int i = 0; i < count; i++) {
+				action.accept(i);
+			}
+			return;
+		}
+		pool.invoke(new BlockingSliceTask(0, count, action));
+	}
+
+	/**
+	 * @param e the exception thrown by {@link #run(ForkJoinPool, int, boolean, IntConsumer)}
+	 * @return the exception of the failed slice without the completion wrappers around it
+	 */
+	static Exception unwrap(RuntimeException e) {
+		Throwable cause = e;
+		while (cause instanceof CompletionException && cause.getCause() != null) {
+			cause = cause.getCause();
+		}
+		return cause instanceof Exception exception ? exception : e;
+	}
+
+	@Override
+	protected void compute() {
+		if (to - from > 1) {
+			int middle = (from + to) >>> 1;
+			invokeAll(new BlockingSliceTask(from, middle, action),
+					new BlockingSliceTask(middle, to, action));
+			return;
+		}
+		try {
+			ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+				private boolean done;
+
+				@Override
+				public boolean block() {
+					action.accept(from);
+					done = true;
+					return true;
+				}
+
+				@Override
+				public boolean isReleasable() {
+					return done;
+				}
+			});
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CompletionException(e);
+		}
+	}
+}
@@ -0,0 +1,179 @@
+package com.wonkglorg.utilitylib.database.query;
+
+import com.wonkglorg.util.interfaces.functional.checked.CheckedFunction;
+import com.wonkglorg.utilitylib.database.Database;
+import com.wonkglorg.utilitylib.database.Database.DatabaseType;
+import com.wonkglorg.utilitylib.database.response.DatabaseObjResponse;
+import com.wonkglorg.utilitylib.database.response.DatabaseSingleObjResponse;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+
+/**
+ * Looks up rows by many keys at once with {@code key IN (?, ...)} queries. Keys are split into
+ * chunks that stay below the parameter limit of the {@link DatabaseType}, every chunk uses one of
+ * a few fixed bucket sizes (powers of two) and is padded with its last key, so only a handful of
+ * distinct statements exist per lookup and driver side statement caches keep hitting. Chunks run
+ * in parallel on pooled connections.
+ * <p>
+ * The base query is wrapped as a subquery, its result must contain the key column and have at
+ * most one row per key. Instances are thread safe and meant to be kept.
+ *
+ * @param <K> the type of the key
+ * @param <T> the type of the mapped rows
+ * @author Wonkglorg
+ */
+@SuppressWarnings("unused")
+public class KeyLookup<K, T> {
+	/**
+	 * The largest bucket used even if the database allows more parameters, larger IN lists rarely
+	 * get faster
+	 */
+	public static final int MAX_BUCKET_SIZE = 1024;
+	private final Database database;
+	private final String baseQuery;
+	private final String keyColumn;
+	private final CheckedFunction<ResultSet, T> adapter;
+	private final Function<? super T, ? extends K> keyOf;
+	private final Object[] parameters;
+	private final int maxBucketSize;
+	private final Map<Integer, String> statements = new ConcurrentHashMap<>();
+	private ForkJoinPool pool = ForkJoinPool.commonPool();
+
+	/**
+	 * @param database the database to query
+	 * @param baseQuery the query selecting the rows, for example {@code SELECT * FROM players}
+	 * @param keyColumn the column holding the key
+	 * @param adapter maps the current row of the result set
+	 * @param keyOf reads the key of a mapped row
+	 * @param parameters the parameters of the base query
+	 */
+	public KeyLookup(Database database, String baseQuery, String keyColumn,
+			CheckedFunction<ResultSet, T> adapter, Function<? super T, ? extends K> keyOf,
+			Object... parameters) {
+		this.database = database;
+		this.baseQuery = baseQuery;
+		this.keyColumn = keyColumn;
+		this.adapter = adapter;
+		this.keyOf = keyOf;
+		this.parameters = parameters;
+		DatabaseType databaseType = database.getDatabaseType();
+		int limit = databaseType == null ? 999 : databaseType.getMaxParameters();
+		limit = Math.min(limit - parameters.length, MAX_BUCKET_SIZE);
+		if (limit < 1) {
+			throw new IllegalArgumentException("Base query uses all available parameters");
+		}
+		this.maxBucketSize = Integer.highestOneBit(limit);
+	}
+
+	/**
+	 * Sets the pool the chunks run on (default {@link ForkJoinPool#commonPool()})
+	 *
+	 * @return {@link KeyLookup}
+	 */
+	public KeyLookup<K, T> pool(ForkJoinPool pool) {
+		this.pool = pool;
+		return this;
+	}
+
+	/**
+	 * @return the largest amount of keys queried with a single statement
+	 */
+	public int getMaxBucketSize() {
+		return maxBucketSize;
+	}
+
+	/**
+	 * Looks up all keys, duplicate and null keys are ignored
+	 *
+	 * @param keys the keys to look up
+	 * @return the rows by key, keys without a row are missing, or the first error of any chunk
+	 */
+	public DatabaseSingleObjResponse<Map<K, T>> findAll(Collection<? extends K> keys) {
+		List<K> unique = new ArrayList<>(new LinkedHashSet<>(keys));
+		unique.remove(null);
+		if (unique.isEmpty()) {
+			return new DatabaseSingleObjResponse<>(null, new HashMap<>());
+		}
+		int chunkCount = (unique.size() + maxBucketSize - 1) / maxBucketSize;
+		List<List<T>> results = new ArrayList<>(chunkCount);
+		for (int i = 0; i < chunkCount; i++) {
+			results.add(null);
+		}
+		try {
+			BlockingSliceTask.run(pool, chunkCount, database.supportsParallelExecution(), index -> {
+				int from = index * maxBucketSize;
+				List<K> chunk = unique.subList(from, Math.min(from + maxBucketSize, unique.size()));
+				results.set(index, queryChunk(chunk));
+			});
+		} catch (RuntimeException e) {
+			return new DatabaseSingleObjResponse<>(BlockingSliceTask.unwrap(e), null);
+		}
+
+		Map<K, T> found = new HashMap<>((int) (unique.size() / 0.75f) + 1);
+		for (List<T> rows : results) {
+			for (T row : rows) {
+				found.put(keyOf.apply(row), row);
+			}
+		}
+		return new DatabaseSingleObjResponse<>(null, found);
+	}
+
+	/**
+	 * Queries a chunk using the smallest bucket it fits into
+	 */
+	private List<T> queryChunk(List<K> chunk) {
+		int bucket = bucketSize(chunk.size());
+		DatabaseObjResponse<T> response = database.executeObjQuery(connection -> {
+			try (PreparedStatement statement = connection.prepareStatement(statement(bucket))) {
+				database.setParameters(statement, 0, parameters);
+				int offset = parameters.length;
+				for (int i = 0; i < bucket; i++) {
+					//padding repeats the last key, duplicates in an IN list match nothing extra
+					K key = chunk.get(Math.min(i, chunk.size() - 1));
+					database.setParameters(statement, offset + i, key);
+				}
+				List<T> rows = new ArrayList<>(chunk.size());
+				try (ResultSet resultSet = statement.executeQuery()) {
+					while (resultSet.next()) {
+						rows.add(adapter.applyThrows(resultSet));
+					}
+				}
+				return rows;
+			}
+		});
+		if (response.hasError()) {
+			throw new CompletionException(response.getException());
+		}
+		return response.getData();
+	}
+
+	private int bucketSize(int keyCount) {
+		return keyCount <= 1 ? 1 : Math.min(maxBucketSize, Integer.highestOneBit(keyCount - 1) << 1);
+	}
+
+	private String statement(int bucket) {
+		return statements.computeIfAbsent(bucket, size -> {
+			StringBuilder sql = new StringBuilder(baseQuery.length() + 48 + size * 3);
+			sql.append("SELECT * FROM (").append(baseQuery).append(") AS key_lookup WHERE ")
+					.append(keyColumn).append(" IN (");
+			for (int i = 0; i < size; i++) {
+				if (i > 0) {
+					sql.append(", ");
+				}
+				sql.append('?');
+			}
+			return sql.append(')').toString();
+		});
+	}
+}
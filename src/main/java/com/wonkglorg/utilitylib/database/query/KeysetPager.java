@@ -0,0 +1,182 @@
+package com.wonkglorg.utilitylib.database.query;
+
+import com.wonkglorg.util.interfaces.functional.checked.CheckedFunction;
+import com.wonkglorg.utilitylib.database.Database;
+import com.wonkglorg.utilitylib.database.Database.DatabaseType;
+import com.wonkglorg.utilitylib.database.response.DatabaseObjResponse;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Walks the rows of a query page by page using keyset (seek) pagination. Each page continues after
+ * the key of the last row of the previous page with {@code WHERE key > ?} instead of an offset, so
+ * every page costs the same however deep the scan goes. Every page is fetched with its own
+ * {@link Database#executeObjQuery(CheckedFunction)} call, pooled databases hold no connection
+ * between pages.
+ * <p>
+ * The base query is wrapped as a subquery and must not be ordered itself, the key columns must be
+ * columns of its result that together are unique. Rows changed behind the current position are
+ * not seen again, rows inserted ahead of it are.
+ *
+ * @param <T> the type of the mapped rows
+ * @author Wonkglorg
+ */
+@SuppressWarnings("unused")
+public class KeysetPager<T> implements Iterator<List<T>> {
+	private final Database database;
+	private final CheckedFunction<ResultSet, T> adapter;
+	private final List<String> keyColumns;
+	private final int pageSize;
+	private final Object[] parameters;
+	private final String firstPageSql;
+	private final String nextPageSql;
+	private Object[] lastKey;
+	private List<T> page;
+	private boolean exhausted;
+
+	/**
+	 * @param database the database to query
+	 * @param baseQuery the unordered query to page through
+	 * @param keyColumns the columns the rows are ordered and continued by
+	 * @param pageSize the amount of rows per page
+	 * @param adapter maps the current row of the result set
+	 * @param parameters the parameters of the base query
+	 */
+	public KeysetPager(Database database, String baseQuery, List<String> keyColumns, int pageSize,
+			CheckedFunction<ResultSet, T> adapter, Object... parameters) {
+		if (keyColumns.isEmpty()) {
+			throw new IllegalArgumentException("At least one key column is required");
+		}
+		if (pageSize < 1) {
+			throw new IllegalArgumentException("Page size must be at least 1");
+		}
+		this.database = database;
+		this.adapter = adapter;
+		this.keyColumns = List.copyOf(keyColumns);
+		this.pageSize = pageSize;
+		this.parameters = parameters;
+		DatabaseType databaseType = database.getDatabaseType();
+		this.firstPageSql = pageSql(databaseType, baseQuery, this.keyColumns, false);
+		this.nextPageSql = pageSql(databaseType, baseQuery, this.keyColumns, true);
+	}
+
+	/**
+	 * Builds {@code SELECT * FROM (base) WHERE (k1 > ?) OR (k1 = ? AND k2 > ?) ... ORDER BY k1, k2
+	 * LIMIT ?}, the key comparison is expanded as SqlServer has no row value comparison
+	 */
+	private static String pageSql(DatabaseType databaseType, String baseQuery,
+			List<String> keyColumns, boolean continued) {
+		StringBuilder sql = new StringBuilder(baseQuery.length() + 64 * keyColumns.size());
+		sql.append("SELECT * FROM (").append(baseQuery).append(") AS keyset_page");
+		if (continued) {
+			sql.append(" WHERE ");
+			for (int i = 0; i < keyColumns.size(); i++) {
+				if (i > 0) {
+					sql.append(" OR ");
+				}
+				sql.append('(');
+				for (int j = 0; j < i; j++) {
+					sql.append(keyColumns.get(j)).append(" = ? AND ");
+				}
+				sql.append(keyColumns.get(i)).append(" > ?)");
+			}
+		}
+		sql.append(" ORDER BY ").append(String.join(", ", keyColumns));
+		if (databaseType == DatabaseType.SQLSERVER) {
+			sql.append(" OFFSET 0 ROWS FETCH NEXT ? ROWS ONLY");
+		} else {
+			sql.append(" LIMIT ?");
+		}
+		return sql.toString();
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (page == null && !exhausted) {
+			page = fetch();
+			if (page.isEmpty()) {
+				page = null;
+				exhausted = true;
+			}
+		}
+		return page != null;
+	}
+
+	/**
+	 * @return the next page, only the last page has fewer than page size rows
+	 * @throws RuntimeException wrapping the error if the page could not be fetched
+	 */
+	@Override
+	public List<T> next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		List<T> current = page;
+		page = null;
+		if (current.size() < pageSize) {
+			exhausted = true;
+		}
+		return current;
+	}
+
+	/**
+	 * @return the remaining rows of all pages, pages are fetched while the stream is consumed
+	 */
+	public Stream<T> stream() {
+		return StreamSupport.stream(
+						Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL),
+						false)
+				.flatMap(List::stream);
+	}
+
+	private List<T> fetch() {
+		boolean continued = lastKey != null;
+		DatabaseObjResponse<T> response = database.executeObjQuery(connection -> {
+			try (PreparedStatement statement = connection.prepareStatement(
+					continued ? nextPageSql : firstPageSql)) {
+				database.setParameters(statement, 0, parameters);
+				int index = parameters.length + 1;
+				if (continued) {
+					for (int i = 0; i < keyColumns.size(); i++) {
+						for (int j = 0; j <= i; j++) {
+							//keys are bound as read so they compare exactly like the stored values
+							statement.setObject(index++, lastKey[j]);
+						}
+					}
+				}
+				statement.setInt(index, pageSize);
+				try (ResultSet resultSet = statement.executeQuery()) {
+					int[] keyIndexes = new int[keyColumns.size()];
+					for (int i = 0; i < keyIndexes.length; i++) {
+						keyIndexes[i] = resultSet.findColumn(keyColumns.get(i));
+					}
+					List<T> rows = new ArrayList<>(pageSize);
+					Object[] key = new Object[keyIndexes.length];
+					while (resultSet.next()) {
+						rows.add(adapter.applyThrows(resultSet));
+						for (int i = 0; i < keyIndexes.length; i++) {
+							key[i] = resultSet.getObject(keyIndexes[i]);
+						}
+					}
+					if (!rows.isEmpty()) {
+						lastKey = key;
+					}
+					return rows;
+				}
+			}
+		});
+		if (response.hasError()) {
+			throw new RuntimeException(response.getException());
+		}
+		return response.getData();
+	}
+}
@@ -0,0 +1,238 @@
+package com.wonkglorg.utilitylib.database.query;
+
+import com.wonkglorg.util.interfaces.functional.checked.CheckedFunction;
+import com.wonkglorg.utilitylib.database.Database;
+import com.wonkglorg.utilitylib.database.response.DatabaseObjResponse;
+import com.wonkglorg.utilitylib.database.response.DatabaseResponse;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+/**
+ * Runs a query over a range in slices at the same time, each slice on its own pooled connection.
+ * The sql must take the bounds of a slice as its first two parameters, the inclusive lower and the
+ * exclusive upper bound, for example {@code SELECT * FROM logs WHERE id >= ? AND id < ? AND level =
+ * ?}. Further parameters follow the bounds.
+ * <p>
+ * Slices are split with fork/join and run on the given {@link ForkJoinPool}, waiting for a
+ * connection or the database is reported as blocking so the pool can compensate. Databases that
+ * do not {@link Database#supportsParallelExecution() support parallel execution} run the slices
+ * one after another. Slices are read with the {@link Database#getStreamingProfile() streaming
+ * profile} of the database.
+ *
+ * @param <T> the type of the mapped rows
+ * @author Wonkglorg
+ */
+@SuppressWarnings("unused")
+public class PartitionedQuery<T> {
+	private final Database database;
+	private final String sql;
+	private final CheckedFunction<ResultSet, T> rowMapper;
+	private final List<Object[]> slices = new ArrayList<>();
+	private Object[] parameters = new Object[0];
+	private ForkJoinPool pool = ForkJoinPool.commonPool();
+
+	/**
+	 * @param database the database to query
+	 * @param sql the query taking the slice bounds as its first two parameters
+	 * @param rowMapper maps the current row of the result set
+	 */
+	public PartitionedQuery(Database database, String sql, CheckedFunction<ResultSet, T> rowMapper) {
+		this.database = database;
+		this.sql = sql;
+		this.rowMapper = rowMapper;
+	}
+
+	/**
+	 * Splits a numeric range into equally sized slices
+	 *
+	 * @param from the inclusive lower bound
+	 * @param to the exclusive upper bound
+	 * @param partitions the amount of slices, fewer are used if the range is smaller
+	 * @return {@link PartitionedQuery}
+	 */
+	public PartitionedQuery<T> range(long from, long to, int partitions) {
+		if (partitions < 1) {
+			throw new IllegalArgumentException("Partition count must be at least 1");
+		}
+		if (to < from) {
+			throw new IllegalArgumentException("Upper bound must not be below lower bound");
+		}
+		long length = to - from;
+		if (length < 0) {
+			throw new IllegalArgumentException("Range is too large to split");
+		}
+		slices.clear();
+		int count = (int) Math.max(1, Math.min(partitions, length));
+		long width = length / count;
+		long remainder = length % count;
+		long lower = from;
+		for (int i = 0; i < count; i++) {
+			long upper = lower + width + (i < remainder ? 1 : 0);
+			slices.add(new Object[]{lower, upper});
+			lower = upper;
+		}
+		return this;
+	}
+
+	/**
+	 * Splits a key range at the given boundaries, n + 1 boundaries make n slices. Works for any key
+	 * type the database can compare, like strings or uuids.
+	 *
+	 * @param boundaries the boundaries in ascending order, the first is the inclusive lower bound of
+	 * the first slice and the last the exclusive upper bound of the last slice
+	 * @return {@link PartitionedQuery}
+	 */
+	public PartitionedQuery<T> boundaries(List<?> boundaries) {
+		if (boundaries.size() < 2) {
+			throw new IllegalArgumentException("At least two boundaries are required");
+		}
+		slices.clear();
+		for (int i = 1; i < boundaries.size(); i++) {
+			slices.add(new Object[]{boundaries.get(i - 1), boundaries.get(i)});
+		}
+		return this;
+	}
+
+	/**
+	 * Sets the parameters following the slice bounds
+	 *
+	 * @return {@link PartitionedQuery}
+	 */
+	public PartitionedQuery<T> parameters(Object... parameters) {
+		this.parameters = parameters;
+		return this;
+	}
+
+	/**
+	 * Sets the pool the slices run on (default {@link ForkJoinPool#commonPool()})
+	 *
+	 * @return {@link PartitionedQuery}
+	 */
+	public PartitionedQuery<T> pool(ForkJoinPool pool) {
+		this.pool = pool;
+		return this;
+	}
+
+	/**
+	 * Runs all slices and collects the rows in range order, if the query orders by the range column
+	 * the result is ordered as well
+	 *
+	 * @return the rows or the first error of any slice
+	 */
+	public DatabaseObjResponse<T> list() {
+		List<List<T>> results = new ArrayList<>(slices.size());
+		for (int i = 0; i < slices.size(); i++) {
+			results.add(null);
+		}
+		try {
+			run(index -> results.set(index, querySlice(index)));
+		} catch (RuntimeException e) {
+			return new DatabaseObjResponse<>(BlockingSliceTask.unwrap(e), null);
+		}
+		int size = 0;
+		for (List<T> result : results) {
+			size += result.size();
+		}
+		List<T> rows = new ArrayList<>(size);
+		results.forEach(rows::addAll);
+		return new DatabaseObjResponse<>(null, rows);
+	}
+
+	/**
+	 * Streams the rows as the slices produce them, rows of one slice arrive in order but slices
+	 * interleave. The consumer is never called concurrently.
+	 *
+	 * @param consumer receives the rows
+	 * @return an error response if any slice failed, rows received before the failure stay
+	 * delivered
+	 */
+	public DatabaseResponse forEach(Consumer<? super T> consumer) {
+		Object lock = new Object();
+		try {
+			run(index -> streamSlice(index, row -> {
+				synchronized (lock) {
+					consumer.accept(row);
+				}
+			}));
+		} catch (RuntimeException e) {
+			return new DatabaseResponse(BlockingSliceTask.unwrap(e));
+		}
+		return new DatabaseResponse(null);
+	}
+
+	/**
+	 * Streams the rows in range order, a slice is handed to the consumer as soon as it and all slices
+	 * before it are done. The consumer is called from the calling thread.
+	 *
+	 * @param consumer receives the rows
+	 * @return an error response if any slice failed, rows received before the failure stay
+	 * delivered
+	 */
+	public DatabaseResponse forEachOrdered(Consumer<? super T> consumer) {
+		List<CompletableFuture<List<T>>> futures = new ArrayList<>(slices.size());
+		for (int i = 0; i < slices.size(); i++) {
+			futures.add(new CompletableFuture<>());
+		}
+		boolean parallel = database.supportsParallelExecution() && slices.size() > 1;
+		if (parallel) {
+			pool.execute(new BlockingSliceTask(0, slices.size(), index -> {
+				try {
+					futures.get(index).complete(querySlice(index));
+				} catch (RuntimeException e) {
+					futures.get(index).completeExceptionally(e);
+				}
+			}));
+		}
+		try {
+			for (int i = 0; i < futures.size(); i++) {
+				List<T> rows = parallel ? futures.get(i).join() : querySlice(i);
+				rows.forEach(consumer);
+			}
+		} catch (RuntimeException e) {
+			return new DatabaseResponse(BlockingSliceTask.unwrap(e));
+		}
+		return new DatabaseResponse(null);
+	}
+
+	/**
+	 * Runs the action for every slice index, in parallel if the database supports it
+	 */
+	private void run(IntConsumer action) {
+		BlockingSliceTask.run(pool, slices.size(), database.supportsParallelExecution(), action);
+	}
+
+	private List<T> querySlice(int index) {
+		List<T> rows = new ArrayList<>();
+		streamSlice(index, rows::add);
+		return rows;
+	}
+
+	private void streamSlice(int index, Consumer<T> consumer) {
+		Object[] bounds = slices.get(index);
+		StreamingProfile profile = database.getStreamingProfile();
+		DatabaseObjResponse<T> response = database.executeObjQuery(connection -> {
+			try (StreamingProfile.Session session = profile.begin(connection);
+					PreparedStatement statement = session.prepareStatement(sql)) {
+				database.setParameters(statement, 0, bounds);
+				database.setParameters(statement, 2, parameters);
+				try (ResultSet resultSet = statement.executeQuery()) {
+					while (resultSet.next()) {
+						consumer.accept(rowMapper.applyThrows(resultSet));
+					}
+				}
+			}
+			return List.of();
+		});
+		if (response.hasError()) {
+			throw new CompletionException(response.getException());
+		}
+	}
+}
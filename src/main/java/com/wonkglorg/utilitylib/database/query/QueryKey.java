@@ -0,0 +1,35 @@
+package com.wonkglorg.utilitylib.database.query;
+
+import java.util.Arrays;
+
+/**
+ * Sql and parameters of a query used as a map key, array parameters compare by content. Shared by
+ * {@link SingleFlight} and {@link com.wonkglorg.utilitylib.database.cache.QueryCache}.
+ */
+@SuppressWarnings("unused")
+public final class QueryKey {
+	private final String sql;
+	private final Object[] parameters;
+	private final int hash;
+
+	/**
+	 * @param sql the sql of the query
+	 * @param parameters its parameters, copied so later changes to the array do not affect the key
+	 */
+	public QueryKey(String sql, Object... parameters) {
+		this.sql = sql;
+		this.parameters = parameters.clone();
+		this.hash = 31 * sql.hashCode() + Arrays.deepHashCode(this.parameters);
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		return other instanceof QueryKey key && hash == key.hash && sql.equals(key.sql)
+				&& Arrays.deepEquals(parameters, key.parameters);
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+}
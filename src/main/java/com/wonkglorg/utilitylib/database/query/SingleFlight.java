@@ -0,0 +1,136 @@
+package com.wonkglorg.utilitylib.database.query;
+
+import com.wonkglorg.util.interfaces.functional.checked.CheckedFunction;
+import com.wonkglorg.utilitylib.database.Database;
+import com.wonkglorg.utilitylib.database.response.DatabaseObjResponse;
+import com.wonkglorg.utilitylib.database.response.DatabaseSingleObjResponse;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs identical queries only once while they are in flight. The first caller of a sql and
+ * parameter combination executes it, callers asking for the same combination before it finished
+ * wait for and share its result. Nothing is cached once the query finished.
+ * <p>
+ * Shared results are unmodifiable lists, the rows themselves are shared between callers as well
+ * and should be immutable (like records).
+ *
+ * @param <T> the type of the mapped rows
+ * @author Wonkglorg
+ */
+@SuppressWarnings("unused")
+public class SingleFlight<T> {
+	private final Database database;
+	private final CheckedFunction<ResultSet, T> adapter;
+	private final Map<QueryKey, CompletableFuture<DatabaseObjResponse<T>>> inFlight =
+			new ConcurrentHashMap<>();
+	private final LongAdder executions = new LongAdder();
+	private final LongAdder shared = new LongAdder();
+
+	/**
+	 * @param database the database to query
+	 * @param adapter maps the current row of the result set for every query of this instance
+	 */
+	public SingleFlight(Database database, CheckedFunction<ResultSet, T> adapter) {
+		this.database = database;
+		this.adapter = adapter;
+	}
+
+	/**
+	 * Runs the query or joins an identical query already running
+	 *
+	 * @param sql the query
+	 * @param parameters the parameters of the query
+	 * @return the unmodifiable rows or the error of the query
+	 */
+	public DatabaseObjResponse<T> executeObjQuery(String sql, Object... parameters) {
+		QueryKey key = new QueryKey(sql, parameters);
+		CompletableFuture<DatabaseObjResponse<T>> flight = new CompletableFuture<>();
+		CompletableFuture<DatabaseObjResponse<T>> running = inFlight.putIfAbsent(key, flight);
+		if (running != null) {
+			shared.increment();
+			return running.join();
+		}
+		executions.increment();
+		DatabaseObjResponse<T> response = null;
+		Throwable failure = null;
+		try {
+			response = query(sql, parameters);
+		} catch (RuntimeException e) {
+			response = new DatabaseObjResponse<>(e, null);
+		} catch (Error e) {
+			failure = e;
+			throw e;
+		} finally {
+			inFlight.remove(key, flight);
+			//callers joined on the flight must never be left waiting
+			if (failure != null) {
+				flight.completeExceptionally(failure);
+			} else {
+				flight.complete(response);
+			}
+		}
+		return response;
+	}
+
+	/**
+	 * Runs the query or joins an identical query already running
+	 *
+	 * @param sql the query
+	 * @param parameters the parameters of the query
+	 * @return the first row, null if there is none, or the error of the query
+	 */
+	public DatabaseSingleObjResponse<T> executeSingleObjQuery(String sql, Object... parameters) {
+		DatabaseObjResponse<T> response = executeObjQuery(sql, parameters);
+		if (response.hasError()) {
+			return new DatabaseSingleObjResponse<>(response.getException(), null);
+		}
+		List<T> rows = response.getData();
+		return new DatabaseSingleObjResponse<>(null, rows.isEmpty() ? null : rows.get(0));
+	}
+
+	private DatabaseObjResponse<T> query(String sql, Object[] parameters) {
+		return database.executeObjQuery(connection -> {
+			try (PreparedStatement statement = connection.prepareStatement(sql)) {
+				database.setParameters(statement, 0, parameters);
+				List<T> rows = new ArrayList<>();
+				try (ResultSet resultSet = statement.executeQuery()) {
+					while (resultSet.next()) {
+						rows.add(adapter.applyThrows(resultSet));
+					}
+				}
+				return Collections.unmodifiableList(rows);
+			}
+		});
+	}
+
+	/**
+	 * @return the amount of queries actually executed
+	 */
+	public long getExecutions() {
+		return executions.sum();
+	}
+
+	/**
+	 * @return the amount of calls that shared the result of a running query instead of executing
+	 * their own
+	 */
+	public long getSharedExecutions() {
+		return shared.sum();
+	}
+
+	/**
+	 * @return the amount of queries currently running
+	 */
+	public int getInFlight() {
+		return inFlight.size();
+	}
+}
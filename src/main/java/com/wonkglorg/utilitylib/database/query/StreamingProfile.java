@@ -0,0 +1,175 @@
+package com.wonkglorg.utilitylib.database.query;
+
+import com.wonkglorg.utilitylib.database.Database.DatabaseType;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * How a driver has to be configured so a large result is streamed instead of being loaded into
+ * memory at once:
+ * <ul>
+ *     <li>MySQL buffers the whole result unless the fetch size is {@link Integer#MIN_VALUE}, rows
+ *     then arrive one by one and the connection can run nothing else until the result is closed.
+ *     With {@code useCursorFetch=true} in the url a positive {@link #fetchSize(int) fetch size}
+ *     uses a server side cursor instead.</li>
+ *     <li>PostgreSQL only uses a cursor with a positive fetch size inside a transaction, auto commit
+ *     is turned off while streaming.</li>
+ *     <li>SqlServer streams with {@code responseBuffering=adaptive}, set on the statement.</li>
+ *     <li>MariaDB streams with a positive fetch size, sqlite always steps through the result.</li>
+ * </ul>
+ * Use {@link #begin(Connection)} around the streamed statement.
+ *
+ * @author Wonkglorg
+ */
+@SuppressWarnings("unused")
+public final class StreamingProfile {
+	public static final int DEFAULT_FETCH_SIZE = 1000;
+	public static final StreamingProfile DEFAULT =
+			new StreamingProfile(DEFAULT_FETCH_SIZE, false, null);
+	public static final StreamingProfile MYSQL =
+			new StreamingProfile(Integer.MIN_VALUE, false, null);
+	public static final StreamingProfile POSTGRESQL =
+			new StreamingProfile(DEFAULT_FETCH_SIZE, true, null);
+	public static final StreamingProfile SQLSERVER =
+			new StreamingProfile(DEFAULT_FETCH_SIZE, false, "adaptive");
+	private final int fetchSize;
+	private final boolean requiresTransaction;
+	private final String responseBuffering;
+
+	private StreamingProfile(int fetchSize, boolean requiresTransaction, String responseBuffering) {
+		this.fetchSize = fetchSize;
+		this.requiresTransaction = requiresTransaction;
+		this.responseBuffering = responseBuffering;
+	}
+
+	/**
+	 * @param databaseType the type of the database, null for an unknown database
+	 * @return the profile of the database type
+	 */
+	public static StreamingProfile of(DatabaseType databaseType) {
+		if (databaseType == null) {
+			return DEFAULT;
+		}
+		return switch (databaseType) {
+			case MYSQL -> MYSQL;
+			case POSTGRESQL -> POSTGRESQL;
+			case SQLSERVER -> SQLSERVER;
+			case SQLITE, MARIA -> DEFAULT;
+		};
+	}
+
+	/**
+	 * Creates a copy using another fetch size, for MySQL only useful with {@code useCursorFetch=true}
+	 *
+	 * @param fetchSize the amount of rows fetched per round trip
+	 * @return the new profile
+	 */
+	public StreamingProfile fetchSize(int fetchSize) {
+		return new StreamingProfile(fetchSize, requiresTransaction, responseBuffering);
+	}
+
+	public int getFetchSize() {
+		return fetchSize;
+	}
+
+	/**
+	 * @return true if auto commit has to be off while streaming
+	 */
+	public boolean requiresTransaction() {
+		return requiresTransaction;
+	}
+
+	/**
+	 * Prepares a connection for streaming
+	 *
+	 * @param connection the connection to stream on
+	 * @return the session creating the statements, closing it restores the connection
+	 * @throws SQLException if the connection could not be prepared
+	 */
+	public Session begin(Connection connection) throws SQLException {
+		boolean restoreAutoCommit = false;
+		if (requiresTransaction && connection.getAutoCommit()) {
+			connection.setAutoCommit(false);
+			restoreAutoCommit = true;
+		}
+		return new Session(connection, restoreAutoCommit);
+	}
+
+	private <S extends Statement> S configure(S statement) throws SQLException {
+		try {
+			statement.setFetchSize(fetchSize);
+			if (responseBuffering != null) {
+				setResponseBuffering(statement, responseBuffering);
+			}
+			return statement;
+		} catch (SQLException | RuntimeException e) {
+			statement.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Sets the SqlServer response buffering, looked up reflectively as the driver is optional
+	 */
+	private static void setResponseBuffering(Statement statement, String mode) throws SQLException {
+		Class<?> type;
+		try {
+			type = Class.forName("com.microsoft.sqlserver.jdbc.ISQLServerStatement", false,
+					statement.getClass().getClassLoader());
+		} catch (ClassNotFoundException | LinkageError e) {
+			return;
+		}
+		if (!statement.isWrapperFor(type)) {
+			return;
+		}
+		try {
+			type.getMethod("setResponseBuffering", String.class).invoke(statement.unwrap(type), mode);
+		} catch (ReflectiveOperationException e) {
+			throw new SQLException("Failed to set response buffering", e);
+		}
+	}
+
+	/**
+	 * A connection prepared for streaming, statements must be closed before the session
+	 */
+	public final class Session implements AutoCloseable {
+		private final Connection connection;
+		private final boolean restoreAutoCommit;
+
+		private Session(Connection connection, boolean restoreAutoCommit) {
+			this.connection = connection;
+			this.restoreAutoCommit = restoreAutoCommit;
+		}
+
+		/**
+		 * @return a forward only, read only statement streaming its results
+		 */
+		public Statement createStatement() throws SQLException {
+			return configure(
+					connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY));
+		}
+
+		/**
+		 * @return a forward only, read only prepared statement streaming its results
+		 */
+		public PreparedStatement prepareStatement(String sql) throws SQLException {
+			return configure(connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY,
+					ResultSet.CONCUR_READ_ONLY));
+		}
+
+		/**
+		 * Ends the transaction started for streaming and turns auto commit back on
+		 */
+		@Override
+		public void close() throws SQLException {
+			if (restoreAutoCommit) {
+				//setting auto commit commits the read only transaction
+				connection.setAutoCommit(true);
+			}
+		}
+	}
+}
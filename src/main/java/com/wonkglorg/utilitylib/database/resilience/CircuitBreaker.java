@@ -0,0 +1,380 @@
+package com.wonkglorg.utilitylib.database.resilience;
+
+import com.wonkglorg.utilitylib.database.exceptions.DeadlineExceededException;
+import com.wonkglorg.utilitylib.database.pool.ConnectionPool;
+
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTimeoutException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Stops calls to a database that is down. While {@link State#CLOSED closed} the outcomes of the
+ * last calls are recorded, the breaker opens once the share of failed calls reaches the failure
+ * ratio or several connection errors happen in a row. While {@link State#OPEN open} every call is
+ * rejected right away. After the open duration the next call becomes a single trial
+ * ({@link State#HALF_OPEN half open}) that checks the database with a fresh connection, the
+ * breaker closes if it succeeds and opens again otherwise.
+ * <p>
+ * Only errors of the database itself count as failures (connection errors, timeouts and SQLState
+ * class 08), errors of the statement like syntax errors prove the database is reachable. Timeouts
+ * of a call whose caller set the deadline are recorded with {@link #recordSuccess()} by the
+ * database, a tight budget of one caller says nothing about the database.
+ *
+ * @author Wonkglorg
+ */
+@SuppressWarnings("unused")
+public class CircuitBreaker {
+	private final BooleanSupplier trial;
+	private final List<Consumer<State>> listeners = new CopyOnWriteArrayList<>();
+	private final LongAdder rejectedCount = new LongAdder();
+	private final Object lock = new Object();
+	private boolean enabled = true;
+	private double failureRatio = 0.5;
+	private int minimumCalls = 20;
+	private int connectionFailureThreshold = 5;
+	private long openNanos = Duration.ofSeconds(30).toNanos();
+	/**
+	 * Ring buffer of the last call outcomes, true for failures
+	 */
+	private boolean[] outcomes = new boolean[50];
+	private int recorded;
+	private int next;
+	private int failures;
+	private int consecutiveConnectionFailures;
+	private volatile State state = State.CLOSED;
+	private long openedAt;
+
+	/**
+	 * @param trial checks if the database is reachable again, called by a single thread while half
+	 * open
+	 */
+	public CircuitBreaker(BooleanSupplier trial) {
+		this.trial = trial;
+	}
+
+	/**
+	 * Sets the share of failed calls that opens the breaker (default 0.5)
+	 *
+	 * @return {@link CircuitBreaker}
+	 */
+	public CircuitBreaker failureRatio(double failureRatio) {
+		if (failureRatio <= 0 || failureRatio > 1) {
+			throw new IllegalArgumentException("Failure ratio must be above 0 and at most 1");
+		}
+		synchronized (lock) {
+			this.failureRatio = failureRatio;
+		}
+		return this;
+	}
+
+	/**
+	 * Sets how many of the last calls the failure ratio is calculated over (default 50) and how many
+	 * calls must be recorded before it is used (default 20)
+	 *
+	 * @return {@link CircuitBreaker}
+	 */
+	public CircuitBreaker window(int windowSize, int minimumCalls) {
+		if (windowSize < 1 || minimumCalls < 1 || minimumCalls > windowSize) {
+			throw new IllegalArgumentException("Minimum calls must be between 1 and the window size");
+		}
+		synchronized (lock) {
+			this.outcomes = new boolean[windowSize];
+			this.minimumCalls = minimumCalls;
+			clearWindow();
+		}
+		return this;
+	}
+
+	/**
+	 * Sets how many connection errors in a row open the breaker regardless of the failure ratio
+	 * (default 5)
+	 *
+	 * @return {@link CircuitBreaker}
+	 */
+	public CircuitBreaker connectionFailureThreshold(int threshold) {
+		if (threshold < 1) {
+			throw new IllegalArgumentException("Threshold must be at least 1");
+		}
+		synchronized (lock) {
+			this.connectionFailureThreshold = threshold;
+		}
+		return this;
+	}
+
+	/**
+	 * Sets how long the breaker stays open before a trial call is made (default 30 seconds)
+	 *
+	 * @return {@link CircuitBreaker}
+	 */
+	public CircuitBreaker openDuration(Duration openDuration) {
+		synchronized (lock) {
+			this.openNanos = openDuration.toNanos();
+		}
+		return this;
+	}
+
+	/**
+	 * Enables or disables the breaker (default enabled), a disabled breaker lets every call through
+	 * and closes
+	 *
+	 * @return {@link CircuitBreaker}
+	 */
+	public CircuitBreaker enabled(boolean enabled) {
+		synchronized (lock) {
+			this.enabled = enabled;
+		}
+		if (!enabled) {
+			reset();
+		}
+		return this;
+	}
+
+	/**
+	 * Subscribes to state changes, for example to switch the application into a degraded mode. The
+	 * listener is called by the thread causing the change.
+	 *
+	 * @param listener receives the new state
+	 */
+	public void addStateListener(Consumer<State> listener) {
+		listeners.add(listener);
+	}
+
+	public void removeStateListener(Consumer<State> listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Asks to run a call, while half open the calling thread may run the trial first
+	 *
+	 * @return true if the call may run, false if it must fail right away
+	 */
+	public boolean allowRequest() {
+		if (state == State.CLOSED) {
+			return true;
+		}
+		synchronized (lock) {
+			if (state == State.CLOSED) {
+				return true;
+			}
+			if (state == State.HALF_OPEN || System.nanoTime() - openedAt < openNanos) {
+				rejectedCount.increment();
+				return false;
+			}
+			state = State.HALF_OPEN;
+		}
+		boolean recovered = false;
+		try {
+			notifyListeners(State.HALF_OPEN);
+			recovered = trial.getAsBoolean();
+		} catch (RuntimeException e) {
+			//a failing trial means the database has not recovered
+		} finally {
+			//even a trial throwing an Error must not leave the breaker half open rejecting every call
+			transition(recovered ? State.CLOSED : State.OPEN);
+		}
+		if (recovered) {
+			return true;
+		}
+		rejectedCount.increment();
+		return false;
+	}
+
+	/**
+	 * Records a call that completed, also used for calls failing with an error of the statement
+	 */
+	public void recordSuccess() {
+		synchronized (lock) {
+			if (state != State.CLOSED) {
+				return;
+			}
+			consecutiveConnectionFailures = 0;
+			record(false);
+		}
+	}
+
+	/**
+	 * Records a failed call, errors that are not caused by the database are recorded as success
+	 *
+	 * @param error the error of the call
+	 */
+	public void recordFailure(Throwable error) {
+		if (!isDatabaseFailure(error)) {
+			recordSuccess();
+			return;
+		}
+		recordFailure(isConnectionFailure(error));
+	}
+
+	/**
+	 * Records a call that could not get a connection
+	 */
+	public void recordConnectionFailure() {
+		recordFailure(true);
+	}
+
+	private void recordFailure(boolean connectionFailure) {
+		boolean open;
+		synchronized (lock) {
+			if (state != State.CLOSED || !enabled) {
+				return;
+			}
+			consecutiveConnectionFailures = connectionFailure ? consecutiveConnectionFailures + 1 : 0;
+			record(true);
+			open = consecutiveConnectionFailures >= connectionFailureThreshold
+					|| recorded >= minimumCalls && failures >= failureRatio * recorded;
+		}
+		if (open) {
+			transition(State.OPEN);
+		}
+	}
+
+	/**
+	 * Adds an outcome to the ring buffer, must hold the lock
+	 */
+	private void record(boolean failed) {
+		if (recorded == outcomes.length) {
+			if (outcomes[next]) {
+				failures--;
+			}
+		} else {
+			recorded++;
+		}
+		outcomes[next] = failed;
+		if (failed) {
+			failures++;
+		}
+		next = (next + 1) % outcomes.length;
+	}
+
+	/**
+	 * Must hold the lock
+	 */
+	private void clearWindow() {
+		recorded = 0;
+		next = 0;
+		failures = 0;
+		consecutiveConnectionFailures = 0;
+	}
+
+	private void transition(State target) {
+		synchronized (lock) {
+			if (state == target) {
+				return;
+			}
+			state = target;
+			clearWindow();
+			if (target == State.OPEN) {
+				openedAt = System.nanoTime();
+			}
+		}
+		notifyListeners(target);
+	}
+
+	private void notifyListeners(State target) {
+		for (Consumer<State> listener : listeners) {
+			listener.accept(target);
+		}
+	}
+
+	/**
+	 * Opens the breaker by hand, for example during maintenance
+	 */
+	public void forceOpen() {
+		transition(State.OPEN);
+	}
+
+	/**
+	 * Closes the breaker and forgets the recorded calls
+	 */
+	public void reset() {
+		transition(State.CLOSED);
+	}
+
+	public State getState() {
+		return state;
+	}
+
+	/**
+	 * @return the share of failed calls in the current window, 0 while not closed
+	 */
+	public double getFailureRatio() {
+		synchronized (lock) {
+			return recorded == 0 ? 0 : (double) failures / recorded;
+		}
+	}
+
+	/**
+	 * @return the amount of calls rejected because the breaker was open
+	 */
+	public long getRejectedCount() {
+		return rejectedCount.sum();
+	}
+
+	/**
+	 * @return true if the error shows the database is unreachable or overloaded
+	 */
+	public static boolean isDatabaseFailure(Throwable error) {
+		for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+			if (cause instanceof DeadlineExceededException) {
+				//raised by the client before the database was asked
+				return false;
+			}
+			if (cause instanceof SQLTimeoutException || isConnectionError(cause)) {
+				return true;
+			}
+			if (cause.getCause() == cause) {
+				break;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return true if the error is caused by a broken or missing connection
+	 */
+	public static boolean isConnectionFailure(Throwable error) {
+		for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+			if (isConnectionError(cause)) {
+				return true;
+			}
+			if (cause.getCause() == cause) {
+				break;
+			}
+		}
+		return false;
+	}
+
+	private static boolean isConnectionError(Throwable error) {
+		if (error instanceof SQLNonTransientConnectionException
+				|| error instanceof SQLTransientConnectionException
+				|| error instanceof SQLRecoverableException
+				|| error instanceof ConnectionPool.PoolException) {
+			return true;
+		}
+		return error instanceof SQLException sqlException && sqlException.getSQLState() != null
+				&& sqlException.getSQLState().startsWith("08");
+	}
+
+	public enum State {
+		/**
+		 * Calls run and their outcomes are recorded
+		 */
+		CLOSED,
+		/**
+		 * Calls are rejected until the open duration passed
+		 */
+		OPEN,
+		/**
+		 * A single trial checks the database, other calls are rejected
+		 */
+		HALF_OPEN
+	}
+}
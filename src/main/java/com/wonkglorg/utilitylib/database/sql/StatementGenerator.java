@@ -0,0 +1,258 @@
+package com.wonkglorg.utilitylib.database.sql;
+
+import com.wonkglorg.utilitylib.database.Database.DatabaseType;
+
+import java.lang.reflect.RecordComponent;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Generates multi row {@code INSERT} and {@code UPSERT} statements for a record class in the
+ * dialect of a {@link DatabaseType}. Columns are the record component names in declaration order,
+ * so the generated placeholders can be bound with
+ * {@link com.wonkglorg.utilitylib.database.Database#recordToDatabase(Record,
+ * java.sql.PreparedStatement, int)} using an offset of {@code row * columnCount}.
+ * <p>
+ * Generated statements are cached per record class, table, row count and key columns.
+ * <ul>
+ *     <li>MySql/MariaDB: {@code INSERT ... ON DUPLICATE KEY UPDATE}</li>
+ *     <li>Sqlite/Postgresql: {@code INSERT ... ON CONFLICT (...) DO UPDATE}</li>
+ *     <li>SqlServer: {@code MERGE}</li>
+ * </ul>
+ */
+@SuppressWarnings("unused")
+public final class StatementGenerator {
+	private static final Map<DatabaseType, StatementGenerator> generators = new EnumMap<>(
+			DatabaseType.class);
+
+	static {
+		for (DatabaseType type : DatabaseType.values()) {
+			generators.put(type, new StatementGenerator(type));
+		}
+	}
+
+	private static final ClassValue<String[]> columnCache = new ClassValue<>() {
+		@Override
+		protected String[] computeValue(Class<?> type) {
+			if (!type.isRecord()) {
+				throw new IllegalArgumentException(type.getName() + " is not a record");
+			}
+			return Arrays.stream(type.getRecordComponents())
+					.map(RecordComponent::getName)
+					.toArray(String[]::new);
+		}
+	};
+
+	private final DatabaseType databaseType;
+	private final ClassValue<Map<String, String>> statementCache = new ClassValue<>() {
+		@Override
+		protected Map<String, String> computeValue(Class<?> type) {
+			return new ConcurrentHashMap<>();
+		}
+	};
+
+	private StatementGenerator(DatabaseType databaseType) {
+		this.databaseType = databaseType;
+	}
+
+	/**
+	 * @param databaseType the dialect to generate
+	 * @return the shared generator for the dialect
+	 */
+	public static StatementGenerator of(DatabaseType databaseType) {
+		if (databaseType == null) {
+			throw new IllegalArgumentException("Database type cannot be null");
+		}
+		return generators.get(databaseType);
+	}
+
+	public DatabaseType getDatabaseType() {
+		return databaseType;
+	}
+
+	/**
+	 * @param recordClass the record class
+	 * @return the column names of the record in declaration order
+	 */
+	public static String[] columns(Class<? extends Record> recordClass) {
+		return columnCache.get(recordClass).clone();
+	}
+
+	/**
+	 * @param columnCount the amount of bind parameters per row
+	 * @return the largest amount of rows a single statement can contain for this dialect
+	 */
+	public int maxRowsPerStatement(int columnCount) {
+		if (columnCount < 1) {
+			throw new IllegalArgumentException("Column count must be at least 1");
+		}
+		return Math.max(1, Math.min(databaseType.getMaxParameters() / columnCount,
+				databaseType.getMaxRowsPerInsert()));
+	}
+
+	/**
+	 * Generates {@code INSERT INTO table (columns) VALUES (?, ...), (?, ...)}
+	 *
+	 * @param recordClass the record class defining the columns
+	 * @param table the table to insert into
+	 * @param rows the amount of rows the statement inserts
+	 * @return the sql statement
+	 */
+	public String insert(Class<? extends Record> recordClass, String table, int rows) {
+		String[] columns = columnCache.get(recordClass);
+		validateRows(columns.length, rows);
+		return statementCache.get(recordClass).computeIfAbsent("insert|" + table + "|" + rows,
+				key -> insertSql(table, columns, rows).toString());
+	}
+
+	/**
+	 * Generates an insert that updates all non key columns if a row with the same key exists. MySQL
+	 * upserts refer to the new values through a row alias, which needs MySQL 8.0.19 or newer.
+	 *
+	 * @param recordClass the record class defining the columns
+	 * @param table the table to upsert into
+	 * @param rows the amount of rows the statement contains
+	 * @param keyColumns the columns of the primary or unique key used to detect existing rows
+	 * @return the sql statement
+	 */
+	public String upsert(Class<? extends Record> recordClass, String table, int rows,
+			String... keyColumns) {
+		String[] columns = columnCache.get(recordClass);
+		validateRows(columns.length, rows);
+		List<String> columnList = Arrays.asList(columns);
+		for (String key : keyColumns) {
+			if (!columnList.contains(key)) {
+				throw new IllegalArgumentException(
+						"Key column " + key + " is not a component of " + recordClass.getName());
+			}
+		}
+		if (keyColumns.length == 0 && databaseType != DatabaseType.MYSQL
+				&& databaseType != DatabaseType.MARIA) {
+			throw new IllegalArgumentException(
+					"Key columns are required for upserts on " + databaseType.getName());
+		}
+		return statementCache.get(recordClass).computeIfAbsent(
+				"upsert|" + table + "|" + rows + "|" + String.join(",", keyColumns),
+				key -> upsertSql(table, columns, rows, Arrays.asList(keyColumns)));
+	}
+
+	private void validateRows(int columnCount, int rows) {
+		if (rows < 1) {
+			throw new IllegalArgumentException("Row count must be at least 1");
+		}
+		if (rows > maxRowsPerStatement(columnCount)) {
+			throw new IllegalArgumentException(
+					rows + " rows exceed the limit of " + maxRowsPerStatement(columnCount) + " for "
+							+ databaseType.getName());
+		}
+	}
+
+	private StringBuilder insertSql(String table, String[] columns, int rows) {
+		StringBuilder sql = new StringBuilder(32 + rows * columns.length * 3);
+		sql.append("INSERT INTO ").append(table).append(" (").append(String.join(", ", columns))
+				.append(") VALUES ");
+		appendValueRows(sql, columns.length, rows);
+		return sql;
+	}
+
+	private String upsertSql(String table, String[] columns, int rows, List<String> keys) {
+		List<String> updated = Arrays.stream(columns).filter(column -> !keys.contains(column)).toList();
+		if (databaseType == DatabaseType.SQLSERVER) {
+			return mergeSql(table, columns, rows, keys, updated);
+		}
+
+		StringBuilder sql = insertSql(table, columns, rows);
+		switch (databaseType) {
+			case MYSQL, MARIA -> {
+				//VALUES(col) is deprecated since MySQL 8.0.20 in favour of a row alias MariaDB lacks
+				boolean rowAlias = databaseType == DatabaseType.MYSQL && !updated.isEmpty();
+				if (rowAlias) {
+					sql.append(" AS new");
+				}
+				sql.append(" ON DUPLICATE KEY UPDATE ");
+				if (updated.isEmpty()) {
+					//no-op update to ignore duplicates without swallowing other errors like INSERT IGNORE
+					sql.append(columns[0]).append(" = ").append(columns[0]);
+				} else if (rowAlias) {
+					appendAssignments(sql, updated, "new.", "");
+				} else {
+					appendAssignments(sql, updated, "VALUES(", ")");
+				}
+			}
+			case SQLITE, POSTGRESQL -> {
+				sql.append(" ON CONFLICT (").append(String.join(", ", keys)).append(") DO ");
+				if (updated.isEmpty()) {
+					sql.append("NOTHING");
+				} else {
+					sql.append("UPDATE SET ");
+					appendAssignments(sql, updated, "excluded.", "");
+				}
+			}
+			default -> throw new IllegalStateException("Unsupported database type " + databaseType);
+		}
+		return sql.toString();
+	}
+
+	private String mergeSql(String table, String[] columns, int rows, List<String> keys,
+			List<String> updated) {
+		String columnList = String.join(", ", columns);
+		StringBuilder sql = new StringBuilder(96 + rows * columns.length * 3);
+		sql.append("MERGE INTO ").append(table).append(" AS target USING (VALUES ");
+		appendValueRows(sql, columns.length, rows);
+		sql.append(") AS source (").append(columnList).append(") ON ");
+		for (int i = 0; i < keys.size(); i++) {
+			if (i > 0) {
+				sql.append(" AND ");
+			}
+			sql.append("target.").append(keys.get(i)).append(" = source.").append(keys.get(i));
+		}
+		if (!updated.isEmpty()) {
+			sql.append(" WHEN MATCHED THEN UPDATE SET ");
+			for (int i = 0; i < updated.size(); i++) {
+				if (i > 0) {
+					sql.append(", ");
+				}
+				sql.append("target.").append(updated.get(i)).append(" = source.").append(updated.get(i));
+			}
+		}
+		sql.append(" WHEN NOT MATCHED THEN INSERT (").append(columnList).append(") VALUES (");
+		for (int i = 0; i < columns.length; i++) {
+			if (i > 0) {
+				sql.append(", ");
+			}
+			sql.append("source.").append(columns[i]);
+		}
+		//MERGE has to be terminated
+		return sql.append(");").toString();
+	}
+
+	private static void appendValueRows(StringBuilder sql, int columnCount, int rows) {
+		for (int row = 0; row < rows; row++) {
+			if (row > 0) {
+				sql.append(", ");
+			}
+			sql.append('(');
+			for (int column = 0; column < columnCount; column++) {
+				if (column > 0) {
+					sql.append(", ");
+				}
+				sql.append('?');
+			}
+			sql.append(')');
+		}
+	}
+
+	private static void appendAssignments(StringBuilder sql, List<String> columns, String prefix,
+			String suffix) {
+		for (int i = 0; i < columns.size(); i++) {
+			if (i > 0) {
+				sql.append(", ");
+			}
+			sql.append(columns.get(i)).append(" = ").append(prefix).append(columns.get(i))
+					.append(suffix);
+		}
+	}
+}
@@ -0,0 +1,747 @@
+package com.wonkglorg.utilitylib.database.transfer;
+
+import com.wonkglorg.utilitylib.database.Database;
+import com.wonkglorg.utilitylib.database.query.StreamingProfile;
+import com.wonkglorg.utilitylib.database.response.DatabaseResponse;
+import com.wonkglorg.utilitylib.database.response.DatabaseSingleObjResponse;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PushbackInputStream;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streams query results into a gzip compressed dump file and back into a table without holding
+ * more than one row (export) or one insert batch (restore) in memory. Dumps only contain portable
+ * values, so they can be restored into any {@link Database}, for example from a
+ * {@link com.wonkglorg.utilitylib.database.SqliteDatabase} into a server database and back.
+ * Results are read with the {@link Database#getStreamingProfile() streaming profile} of the source
+ * so the driver does not buffer them either.
+ * <p>
+ * The {@link Format#BINARY} format is a header with the column names and types followed by length
+ * prefixed, type tagged values. {@link Format#CSV} is RFC 4180 with a header row, byte values are
+ * base64 encoded and null is an empty unquoted field.
+ */
+@SuppressWarnings("unused")
+public final class DatabaseDump {
+	private static final int MAGIC = 0x55444244; //UDBD
+	private static final byte VERSION = 1;
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	public enum Format {
+		BINARY,
+		CSV
+	}
+
+	private DatabaseDump() {
+	}
+
+	/**
+	 * Streams the result of a query into a dump file, an existing file is overwritten
+	 *
+	 * @param source the database to read from
+	 * @param query the query selecting the rows to dump
+	 * @param file the file to write
+	 * @param format the format of the file
+	 * @return the amount of rows written
+	 */
+	public static DatabaseSingleObjResponse<Long> export(Database source, String query, Path file,
+			Format format) {
+		return export(source, query, file, format, Deflater.BEST_SPEED);
+	}
+
+	/**
+	 * Streams the result of a query into a dump file, an existing file is overwritten
+	 *
+	 * @param source the database to read from
+	 * @param query the query selecting the rows to dump
+	 * @param file the file to write
+	 * @param format the format of the file
+	 * @param compressionLevel the {@link Deflater} level (0-9)
+	 * @return the amount of rows written
+	 */
+	public static DatabaseSingleObjResponse<Long> export(Database source, String query, Path file,
+			Format format, int compressionLevel) {
+		StreamingProfile profile = source.getStreamingProfile();
+		return source.executeSingleObjQuery(connection -> {
+			try (StreamingProfile.Session session = profile.begin(connection);
+					Statement statement = session.createStatement();
+					ResultSet resultSet = statement.executeQuery(query);
+					OutputStream output = openOutput(file, compressionLevel)) {
+				ResultSetRows rows = new ResultSetRows(resultSet);
+				RowSink sink = format == Format.BINARY ? new BinarySink(output) : new CsvSink(output);
+				sink.writeHeader(rows.columns, rows.kinds, rows.sqlTypes);
+				long count = 0;
+				Object[] row;
+				while ((row = rows.next()) != null) {
+					sink.writeRow(row);
+					count++;
+				}
+				sink.finish();
+				return count;
+			}
+		});
+	}
+
+	/**
+	 * Streams a dump file into a table using batched inserts, the format is detected from the
+	 * file. Each batch is committed on its own so at most one batch is held in memory.
+	 *
+	 * @param target the database to insert into
+	 * @param table the table to insert into, its columns must match the dumped column names
+	 * @param file the dump file
+	 * @param batchSize the amount of rows per batch
+	 * @return the amount of rows inserted
+	 */
+	public static DatabaseSingleObjResponse<Long> restore(Database target, String table, Path file,
+			int batchSize) {
+		long[] count = new long[1];
+		//execute is used for writes so routing databases send it to the primary
+		DatabaseResponse response = target.execute(connection -> {
+			try (InputStream input = openInput(file)) {
+				PushbackInputStream pushback = new PushbackInputStream(input, 4);
+				byte[] magic = pushback.readNBytes(4);
+				pushback.unread(magic);
+				RowSource rows;
+				if (magic.length == 4 && toInt(magic) == MAGIC) {
+					rows = new BinarySource(pushback);
+				} else {
+					rows = new CsvSource(pushback, connection, table);
+				}
+				count[0] = insertRows(connection, table, rows, batchSize);
+			}
+		});
+		return new DatabaseSingleObjResponse<>(response.getException(),
+				response.hasError() ? null : count[0]);
+	}
+
+	/**
+	 * Copies the result of a query directly into a table of another database without an
+	 * intermediate file, rows are inserted in batches while the source is still being read.
+	 * <p>
+	 * The source connection stays checked out until the target connection is available, so source
+	 * and target must not share a connection pool or a full pool waits on itself forever. Copies
+	 * within one database should use {@code INSERT INTO ... SELECT} instead.
+	 *
+	 * @param source the database to read from
+	 * @param query the query selecting the rows to copy
+	 * @param target the database to insert into
+	 * @param table the table to insert into, its columns must match the selected column names
+	 * @param batchSize the amount of rows per batch
+	 * @return the amount of rows copied
+	 * @throws IllegalArgumentException if source and target are the same database
+	 */
+	public static DatabaseSingleObjResponse<Long> copy(Database source, String query,
+			Database target, String table, int batchSize) {
+		if (source == target) {
+			throw new IllegalArgumentException(
+					"Source and target are the same database, use INSERT INTO ... SELECT instead");
+		}
+		StreamingProfile profile = source.getStreamingProfile();
+		return source.executeSingleObjQuery(sourceConnection -> {
+			try (StreamingProfile.Session session = profile.begin(sourceConnection);
+					Statement statement = session.createStatement();
+					ResultSet resultSet = statement.executeQuery(query)) {
+				ResultSetRows rows = new ResultSetRows(resultSet);
+				long[] count = new long[1];
+				DatabaseResponse response = target.execute(
+						targetConnection -> count[0] = insertRows(targetConnection, table, rows, batchSize));
+				if (response.hasError()) {
+					throw response.getException();
+				}
+				return count[0];
+			}
+		});
+	}
+
+	private static long insertRows(Connection connection, String table, RowSource rows,
+			int batchSize) throws SQLException, IOException {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("Batch size must be at least 1");
+		}
+		String[] columns = rows.columns();
+		int[] sqlTypes = rows.sqlTypes();
+		String placeholders = String.join(", ", Arrays.stream(columns).map(c -> "?").toList());
+		String sql = "INSERT INTO " + table + " (" + String.join(", ", columns) + ") VALUES ("
+				+ placeholders + ")";
+
+		boolean autoCommit = connection.getAutoCommit();
+		connection.setAutoCommit(false);
+		long count = 0;
+		try (PreparedStatement statement = connection.prepareStatement(sql)) {
+			int batched = 0;
+			Object[] row;
+			while ((row = rows.next()) != null) {
+				for (int i = 0; i < row.length; i++) {
+					bind(statement, i + 1, row[i], sqlTypes[i]);
+				}
+				statement.addBatch();
+				if (++batched == batchSize) {
+					statement.executeBatch();
+					connection.commit();
+					count += batched;
+					batched = 0;
+				}
+			}
+			if (batched > 0) {
+				statement.executeBatch();
+				connection.commit();
+				count += batched;
+			}
+			return count;
+		} catch (SQLException | IOException | RuntimeException e) {
+			connection.rollback();
+			throw e;
+		} finally {
+			connection.setAutoCommit(autoCommit);
+		}
+	}
+
+	private static void bind(PreparedStatement statement, int index, Object value, int sqlType)
+			throws SQLException {
+		if (value == null) {
+			statement.setNull(index, sqlType);
+		} else if (value instanceof Long longValue) {
+			statement.setLong(index, longValue);
+		} else if (value instanceof Double doubleValue) {
+			statement.setDouble(index, doubleValue);
+		} else if (value instanceof BigDecimal decimal) {
+			statement.setBigDecimal(index, decimal);
+		} else if (value instanceof Boolean booleanValue) {
+			statement.setBoolean(index, booleanValue);
+		} else if (value instanceof byte[] bytes) {
+			statement.setBytes(index, bytes);
+		} else if (value instanceof Date date) {
+			statement.setDate(index, date);
+		} else if (value instanceof Time time) {
+			statement.setTime(index, time);
+		} else if (value instanceof Timestamp timestamp) {
+			statement.setTimestamp(index, timestamp);
+		} else {
+			statement.setString(index, value.toString());
+		}
+	}
+
+	private static OutputStream openOutput(Path file, int compressionLevel) throws IOException {
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+		GZIPOutputStream gzip = new GZIPOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE) {
+			{
+				def.setLevel(compressionLevel);
+			}
+		};
+		return new BufferedOutputStream(gzip, BUFFER_SIZE);
+	}
+
+	private static InputStream openInput(Path file) throws IOException {
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+		return new BufferedInputStream(
+				new GZIPInputStream(Channels.newInputStream(channel), BUFFER_SIZE), BUFFER_SIZE);
+	}
+
+	private static int toInt(byte[] bytes) {
+		return ((bytes[0] & 0xFF) << 24) | ((bytes[1] & 0xFF) << 16) | ((bytes[2] & 0xFF) << 8) | (
+				bytes[3] & 0xFF);
+	}
+
+	/**
+	 * The portable value kinds a column is read and written as
+	 */
+	private enum Kind {
+		LONG,
+		DOUBLE,
+		DECIMAL,
+		BOOLEAN,
+		STRING,
+		BYTES,
+		DATE,
+		TIME,
+		TIMESTAMP;
+
+		static Kind of(int sqlType) {
+			return switch (sqlType) {
+				case Types.BIT, Types.BOOLEAN -> BOOLEAN;
+				case Types.TINYINT, Types.SMALLINT, Types.INTEGER, Types.BIGINT -> LONG;
+				case Types.REAL, Types.FLOAT, Types.DOUBLE -> DOUBLE;
+				case Types.NUMERIC, Types.DECIMAL -> DECIMAL;
+				case Types.BINARY, Types.VARBINARY, Types.LONGVARBINARY, Types.BLOB -> BYTES;
+				case Types.DATE -> DATE;
+				case Types.TIME, Types.TIME_WITH_TIMEZONE -> TIME;
+				case Types.TIMESTAMP, Types.TIMESTAMP_WITH_TIMEZONE -> TIMESTAMP;
+				default -> STRING;
+			};
+		}
+
+		Object read(ResultSet resultSet, int index) throws SQLException {
+			Object value = switch (this) {
+				case LONG -> resultSet.getLong(index);
+				case DOUBLE -> resultSet.getDouble(index);
+				case DECIMAL -> resultSet.getBigDecimal(index);
+				case BOOLEAN -> resultSet.getBoolean(index);
+				case STRING -> resultSet.getString(index);
+				case BYTES -> resultSet.getBytes(index);
+				case DATE -> resultSet.getDate(index);
+				case TIME -> resultSet.getTime(index);
+				case TIMESTAMP -> resultSet.getTimestamp(index);
+			};
+			return resultSet.wasNull() ? null : value;
+		}
+
+		Object parse(String text) {
+			return switch (this) {
+				case LONG -> Long.parseLong(text);
+				case DOUBLE -> Double.parseDouble(text);
+				case DECIMAL -> new BigDecimal(text);
+				case BOOLEAN -> Boolean.parseBoolean(text) || "1".equals(text);
+				case STRING -> text;
+				case BYTES -> Base64.getDecoder().decode(text);
+				case DATE -> Date.valueOf(text);
+				case TIME -> Time.valueOf(text);
+				case TIMESTAMP -> Timestamp.valueOf(text);
+			};
+		}
+
+		String format(Object value) {
+			return this == BYTES ? Base64.getEncoder().encodeToString((byte[]) value) : value.toString();
+		}
+	}
+
+	private interface RowSource {
+		String[] columns();
+
+		int[] sqlTypes();
+
+		/**
+		 * @return the next row or null if there are no more rows
+		 */
+		Object[] next() throws SQLException, IOException;
+	}
+
+	private interface RowSink {
+		void writeHeader(String[] columns, Kind[] kinds, int[] sqlTypes) throws IOException;
+
+		void writeRow(Object[] row) throws IOException;
+
+		void finish() throws IOException;
+	}
+
+	private static final class ResultSetRows implements RowSource {
+		private final ResultSet resultSet;
+		private final String[] columns;
+		private final Kind[] kinds;
+		private final int[] sqlTypes;
+
+		ResultSetRows(ResultSet resultSet) throws SQLException {
+			this.resultSet = resultSet;
+			ResultSetMetaData metaData = resultSet.getMetaData();
+			int count = metaData.getColumnCount();
+			columns = new String[count];
+			kinds = new Kind[count];
+			sqlTypes = new int[count];
+			for (int i = 0; i < count; i++) {
+				columns[i] = metaData.getColumnLabel(i + 1);
+				sqlTypes[i] = metaData.getColumnType(i + 1);
+				kinds[i] = Kind.of(sqlTypes[i]);
+			}
+		}
+
+		@Override
+		public String[] columns() {
+			return columns;
+		}
+
+		@Override
+		public int[] sqlTypes() {
+			return sqlTypes;
+		}
+
+		@Override
+		public Object[] next() throws SQLException {
+			if (!resultSet.next()) {
+				return null;
+			}
+			Object[] row = new Object[kinds.length];
+			for (int i = 0; i < kinds.length; i++) {
+				row[i] = kinds[i].read(resultSet, i + 1);
+			}
+			return row;
+		}
+	}
+
+	private static final class BinarySink implements RowSink {
+		private final DataOutputStream output;
+
+		BinarySink(OutputStream output) {
+			this.output = new DataOutputStream(output);
+		}
+
+		@Override
+		public void writeHeader(String[] columns, Kind[] kinds, int[] sqlTypes) throws IOException {
+			output.writeInt(MAGIC);
+			output.writeByte(VERSION);
+			output.writeInt(columns.length);
+			for (int i = 0; i < columns.length; i++) {
+				output.writeUTF(columns[i]);
+				output.writeInt(sqlTypes[i]);
+			}
+		}
+
+		@Override
+		public void writeRow(Object[] row) throws IOException {
+			output.writeBoolean(true);
+			for (Object value : row) {
+				writeValue(value);
+			}
+		}
+
+		private void writeValue(Object value) throws IOException {
+			if (value == null) {
+				output.writeByte(0);
+			} else if (value instanceof Long longValue) {
+				output.writeByte(Kind.LONG.ordinal() + 1);
+				output.writeLong(longValue);
+			} else if (value instanceof Double doubleValue) {
+				output.writeByte(Kind.DOUBLE.ordinal() + 1);
+				output.writeDouble(doubleValue);
+			} else if (value instanceof BigDecimal decimal) {
+				output.writeByte(Kind.DECIMAL.ordinal() + 1);
+				writeBytes(decimal.toString().getBytes(StandardCharsets.US_ASCII));
+			} else if (value instanceof Boolean booleanValue) {
+				output.writeByte(Kind.BOOLEAN.ordinal() + 1);
+				output.writeBoolean(booleanValue);
+			} else if (value instanceof byte[] bytes) {
+				output.writeByte(Kind.BYTES.ordinal() + 1);
+				writeBytes(bytes);
+			} else if (value instanceof Date date) {
+				output.writeByte(Kind.DATE.ordinal() + 1);
+				output.writeLong(date.toLocalDate().toEpochDay());
+			} else if (value instanceof Time time) {
+				output.writeByte(Kind.TIME.ordinal() + 1);
+				output.writeLong(time.toLocalTime().toNanoOfDay());
+			} else if (value instanceof Timestamp timestamp) {
+				output.writeByte(Kind.TIMESTAMP.ordinal() + 1);
+				output.writeLong(timestamp.getTime());
+				output.writeInt(timestamp.getNanos());
+			} else {
+				output.writeByte(Kind.STRING.ordinal() + 1);
+				writeBytes(value.toString().getBytes(StandardCharsets.UTF_8));
+			}
+		}
+
+		private void writeBytes(byte[] bytes) throws IOException {
+			output.writeInt(bytes.length);
+			output.write(bytes);
+		}
+
+		@Override
+		public void finish() throws IOException {
+			output.writeBoolean(false);
+			output.flush();
+		}
+	}
+
+	private static final class BinarySource implements RowSource {
+		private final DataInputStream input;
+		private final String[] columns;
+		private final int[] sqlTypes;
+		private final Kind[] kinds = Kind.values();
+
+		BinarySource(InputStream input) throws IOException {
+			this.input = new DataInputStream(input);
+			if (this.input.readInt() != MAGIC) {
+				throw new IOException("Not a database dump");
+			}
+			byte version = this.input.readByte();
+			if (version != VERSION) {
+				throw new IOException("Unsupported dump version " + version);
+			}
+			int count = this.input.readInt();
+			columns = new String[count];
+			sqlTypes = new int[count];
+			for (int i = 0; i < count; i++) {
+				columns[i] = this.input.readUTF();
+				sqlTypes[i] = this.input.readInt();
+			}
+		}
+
+		@Override
+		public String[] columns() {
+			return columns;
+		}
+
+		@Override
+		public int[] sqlTypes() {
+			return sqlTypes;
+		}
+
+		@Override
+		public Object[] next() throws IOException {
+			boolean hasRow;
+			try {
+				hasRow = input.readBoolean();
+			} catch (EOFException e) {
+				throw new IOException("Dump file is truncated", e);
+			}
+			if (!hasRow) {
+				return null;
+			}
+			Object[] row = new Object[columns.length];
+			for (int i = 0; i < row.length; i++) {
+				row[i] = readValue();
+			}
+			return row;
+		}
+
+		private Object readValue() throws IOException {
+			int tag = input.readUnsignedByte();
+			if (tag == 0) {
+				return null;
+			}
+			if (tag > kinds.length) {
+				throw new IOException("Unknown value tag " + tag);
+			}
+			return switch (kinds[tag - 1]) {
+				case LONG -> input.readLong();
+				case DOUBLE -> input.readDouble();
+				case DECIMAL -> new BigDecimal(new String(readBytes(), StandardCharsets.US_ASCII));
+				case BOOLEAN -> input.readBoolean();
+				case STRING -> new String(readBytes(), StandardCharsets.UTF_8);
+				case BYTES -> readBytes();
+				case DATE -> Date.valueOf(LocalDate.ofEpochDay(input.readLong()));
+				case TIME -> Time.valueOf(LocalTime.ofNanoOfDay(input.readLong()));
+				case TIMESTAMP -> {
+					Timestamp timestamp = new Timestamp(input.readLong());
+					timestamp.setNanos(input.readInt());
+					yield timestamp;
+				}
+			};
+		}
+
+		private byte[] readBytes() throws IOException {
+			int length = input.readInt();
+			if (length < 0 || length > Integer.MAX_VALUE - 8) {
+				throw new IOException("Invalid value length " + length);
+			}
+			if (length <= BUFFER_SIZE) {
+				byte[] bytes = new byte[length];
+				input.readFully(bytes);
+				return bytes;
+			}
+			//grow with the data actually read so a corrupt length can not allocate gigabytes up front
+			byte[] bytes = new byte[BUFFER_SIZE];
+			int read = 0;
+			while (read < length) {
+				if (read == bytes.length) {
+					bytes = Arrays.copyOf(bytes, (int) Math.min(length, bytes.length * 2L));
+				}
+				int count = input.read(bytes, read, bytes.length - read);
+				if (count < 0) {
+					throw new EOFException("Dump ends inside a value of " + length + " bytes");
+				}
+				read += count;
+			}
+			return bytes;
+		}
+	}
+
+	private static final class CsvSink implements RowSink {
+		private final Writer writer;
+		private Kind[] kinds;
+
+		CsvSink(OutputStream output) {
+			this.writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8),
+					BUFFER_SIZE);
+		}
+
+		@Override
+		public void writeHeader(String[] columns, Kind[] kinds, int[] sqlTypes) throws IOException {
+			this.kinds = kinds;
+			for (int i = 0; i < columns.length; i++) {
+				if (i > 0) {
+					writer.write(',');
+				}
+				writeField(columns[i]);
+			}
+			writer.write("\r\n");
+		}
+
+		@Override
+		public void writeRow(Object[] row) throws IOException {
+			for (int i = 0; i < row.length; i++) {
+				if (i > 0) {
+					writer.write(',');
+				}
+				if (row[i] != null) {
+					writeField(kinds[i].format(row[i]));
+				}
+			}
+			writer.write("\r\n");
+		}
+
+		private void writeField(String value) throws IOException {
+			//empty strings are quoted to tell them apart from null
+			boolean quote = value.isEmpty();
+			for (int i = 0; i < value.length() && !quote; i++) {
+				char c = value.charAt(i);
+				quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+			}
+			if (!quote) {
+				writer.write(value);
+				return;
+			}
+			writer.write('"');
+			writer.write(value.replace("\"", "\"\""));
+			writer.write('"');
+		}
+
+		@Override
+		public void finish() throws IOException {
+			writer.flush();
+		}
+	}
+
+	private static final class CsvSource implements RowSource {
+		private final BufferedReader reader;
+		private final String[] columns;
+		private final Kind[] kinds;
+		private final int[] sqlTypes;
+		private final StringBuilder field = new StringBuilder();
+
+		CsvSource(InputStream input, Connection connection, String table)
+				throws IOException, SQLException {
+			this.reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8),
+					BUFFER_SIZE);
+			Object[] header = readRecord(null);
+			if (header == null) {
+				throw new IOException("CSV dump has no header");
+			}
+			columns = Arrays.stream(header).map(String::valueOf).toArray(String[]::new);
+			sqlTypes = new int[columns.length];
+			kinds = new Kind[columns.length];
+			//csv values carry no type, the target table decides how they are parsed
+			try (Statement statement = connection.createStatement();
+					ResultSet resultSet = statement.executeQuery(
+							"SELECT " + String.join(", ", columns) + " FROM " + table + " WHERE 1 = 0")) {
+				ResultSetMetaData metaData = resultSet.getMetaData();
+				for (int i = 0; i < columns.length; i++) {
+					sqlTypes[i] = metaData.getColumnType(i + 1);
+					kinds[i] = Kind.of(sqlTypes[i]);
+				}
+			}
+		}
+
+		@Override
+		public String[] columns() {
+			return columns;
+		}
+
+		@Override
+		public int[] sqlTypes() {
+			return sqlTypes;
+		}
+
+		@Override
+		public Object[] next() throws IOException {
+			return readRecord(kinds);
+		}
+
+		/**
+		 * Reads one csv record, quoted fields may contain line breaks
+		 */
+		private Object[] readRecord(Kind[] kinds) throws IOException {
+			int c = reader.read();
+			if (c == -1) {
+				return null;
+			}
+			Object[] values = new Object[kinds == null ? 16 : kinds.length];
+			int index = 0;
+			while (true) {
+				field.setLength(0);
+				boolean quoted = false;
+				if (c == '"') {
+					quoted = true;
+					while (true) {
+						c = reader.read();
+						if (c == -1) {
+							throw new IOException("Unterminated quoted field");
+						}
+						if (c == '"') {
+							c = reader.read();
+							if (c != '"') {
+								break;
+							}
+						}
+						field.append((char) c);
+					}
+				} else {
+					while (c != ',' && c != '\n' && c != '\r' && c != -1) {
+						field.append((char) c);
+						c = reader.read();
+					}
+				}
+
+				if (index == values.length) {
+					if (kinds != null) {
+						throw new IOException("CSV row has more fields than columns");
+					}
+					values = Arrays.copyOf(values, values.length * 2);
+				}
+				if (!quoted && field.length() == 0) {
+					values[index++] = null;
+				} else {
+					values[index++] = kinds == null ? field.toString() : kinds[index - 1].parse(
+							field.toString());
+				}
+
+				if (c == ',') {
+					c = reader.read();
+					continue;
+				}
+				if (c == '\r') {
+					reader.mark(1);
+					if (reader.read() != '\n') {
+						reader.reset();
+					}
+				}
+				break;
+			}
+			if (kinds != null && index != kinds.length) {
+				throw new IOException("CSV row has " + index + " fields but " + kinds.length + " columns");
+			}
+			return kinds == null ? Arrays.copyOf(values, index) : values;
+		}
+	}
+}
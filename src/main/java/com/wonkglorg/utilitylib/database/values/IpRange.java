@@ -0,0 +1,262 @@
+package com.wonkglorg.utilitylib.database.values;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * An inclusive range of IPv4 or IPv6 addresses in the storage format used by
+ * {@link com.wonkglorg.utilitylib.database.datatypes.TypeHandlerIpv4Binary} and
+ * {@link com.wonkglorg.utilitylib.database.datatypes.TypeHandlerIpv6Binary}, to query them as a
+ * {@code BETWEEN} that can use the column index.
+ * <pre>
+ *     {@code
+ * IpRange range = IpRange.ofCidr("10.0.0.0/8");
+ * PreparedStatement statement = connection.prepareStatement(
+ *         "SELECT * FROM bans WHERE " + range.between("ip"));
+ * range.bind(statement, 1);
+ * }
+ * </pre>
+ */
+@SuppressWarnings("unused")
+public final class IpRange {
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+	private final Object start;
+	private final Object end;
+
+	private IpRange(Object start, Object end) {
+		this.start = start;
+		this.end = end;
+	}
+
+	/**
+	 * Creates the range covered by a cidr block like {@code 192.168.0.0/16} or {@code 2001:db8::/32}
+	 *
+	 * @param cidr the cidr notation, an address without prefix length matches only itself
+	 * @return the range
+	 */
+	public static IpRange ofCidr(String cidr) {
+		int slash = cidr.indexOf('/');
+		String address = slash < 0 ? cidr : cidr.substring(0, slash);
+		boolean ipv6 = address.indexOf(':') >= 0;
+		int prefix = slash < 0 ? (ipv6 ? 128 : 32) : Integer.parseInt(cidr.substring(slash + 1).trim());
+
+		if (!ipv6) {
+			if (prefix < 0 || prefix > 32) {
+				throw new IllegalArgumentException("Invalid IPv4 prefix length: " + prefix);
+			}
+			long mask = prefix == 0 ? 0 : (0xFFFFFFFFL << (32 - prefix)) & 0xFFFFFFFFL;
+			long value = ipv4ToLong(address);
+			return new IpRange(value & mask, (value & mask) | (~mask & 0xFFFFFFFFL));
+		}
+
+		if (prefix < 0 || prefix > 128) {
+			throw new IllegalArgumentException("Invalid IPv6 prefix length: " + prefix);
+		}
+		byte[] low = ipv6ToBytes(address);
+		byte[] high = low.clone();
+		for (int i = 0; i < 16; i++) {
+			int bits = Math.max(0, Math.min(8, prefix - i * 8));
+			int mask = bits == 0 ? 0 : (0xFF << (8 - bits)) & 0xFF;
+			low[i] = (byte) (low[i] & mask);
+			high[i] = (byte) (low[i] | (~mask & 0xFF));
+		}
+		return new IpRange(low, high);
+	}
+
+	/**
+	 * Creates a range between two IPv4 addresses (inclusive)
+	 */
+	public static IpRange ipv4(String from, String to) {
+		return new IpRange(ipv4ToLong(from), ipv4ToLong(to));
+	}
+
+	/**
+	 * Creates a range between two IPv6 addresses (inclusive)
+	 */
+	public static IpRange ipv6(String from, String to) {
+		return new IpRange(ipv6ToBytes(from), ipv6ToBytes(to));
+	}
+
+	/**
+	 * @return true if this range covers IPv6 addresses
+	 */
+	public boolean isIpv6() {
+		return start instanceof byte[];
+	}
+
+	/**
+	 * @return the lowest address as stored in the database (Long for IPv4, byte[16] for IPv6)
+	 */
+	public Object getStart() {
+		return start instanceof byte[] bytes ? bytes.clone() : start;
+	}
+
+	/**
+	 * @return the highest address as stored in the database (Long for IPv4, byte[16] for IPv6)
+	 */
+	public Object getEnd() {
+		return end instanceof byte[] bytes ? bytes.clone() : end;
+	}
+
+	/**
+	 * @param column the column holding the binary stored addresses
+	 * @return {@code column BETWEEN ? AND ?}, bind the values with {@link #bind(PreparedStatement,
+	 * int)}
+	 * @throws IllegalArgumentException if the column contains anything but letters, digits,
+	 * underscores and dots
+	 */
+	public String between(String column) {
+		if (!column.matches("[a-zA-Z0-9_.]+")) {
+			throw new IllegalArgumentException("Invalid column name: " + column);
+		}
+		return column + " BETWEEN ? AND ?";
+	}
+
+	/**
+	 * Binds the start and end of this range to two consecutive placeholders
+	 *
+	 * @param statement the statement to bind to
+	 * @param index the index of the first placeholder (starts at 1)
+	 * @return the index of the next placeholder after this range
+	 * @throws SQLException if binding failed
+	 */
+	public int bind(PreparedStatement statement, int index) throws SQLException {
+		if (start instanceof byte[] low) {
+			statement.setBytes(index, low);
+			statement.setBytes(index + 1, (byte[]) end);
+		} else {
+			statement.setLong(index, (Long) start);
+			statement.setLong(index + 1, (Long) end);
+		}
+		return index + 2;
+	}
+
+	/**
+	 * Converts a dotted IPv4 address to its unsigned 32 bit value
+	 *
+	 * @param address the address like 127.0.0.1
+	 * @return the value between 0 and 2^32-1
+	 */
+	public static long ipv4ToLong(String address) {
+		long result = 0;
+		int octet = 0;
+		int octets = 0;
+		int digits = 0;
+		for (int i = 0, length = address.length(); i <= length; i++) {
+			char c = i < length ? address.charAt(i) : '.';
+			if (c == '.') {
+				if (digits == 0 || octet > 255 || ++octets > 4) {
+					throw new IllegalArgumentException("Invalid IPv4 address: " + address);
+				}
+				result = (result << 8) | octet;
+				octet = 0;
+				digits = 0;
+			} else if (c >= '0' && c <= '9' && digits < 3) {
+				octet = octet * 10 + (c - '0');
+				digits++;
+			} else {
+				throw new IllegalArgumentException("Invalid IPv4 address: " + address);
+			}
+		}
+		if (octets != 4) {
+			throw new IllegalArgumentException("Invalid IPv4 address: " + address);
+		}
+		return result;
+	}
+
+	/**
+	 * Converts an unsigned 32 bit value to its dotted IPv4 notation
+	 */
+	public static String longToIpv4(long value) {
+		return ((value >>> 24) & 0xFF) + "." + ((value >>> 16) & 0xFF) + "." + ((value >>> 8) & 0xFF) + "."
+				+ (value & 0xFF);
+	}
+
+	/**
+	 * Converts an IPv6 literal to its 16 network order bytes, IPv4 mapped addresses keep their
+	 * mapped form
+	 *
+	 * @param address the address literal like 2001:db8::1
+	 * @return the 16 address bytes
+	 */
+	public static byte[] ipv6ToBytes(String address) {
+		String literal = address.startsWith("[") && address.endsWith("]") ? address.substring(1,
+				address.length() - 1) : address;
+		if (literal.indexOf(':') < 0) {
+			//prevents InetAddress from resolving a hostname
+			throw new IllegalArgumentException("Invalid IPv6 address: " + address);
+		}
+		try {
+			InetAddress inetAddress = InetAddress.getByName(literal);
+			byte[] bytes = inetAddress.getAddress();
+			if (inetAddress instanceof Inet4Address) {
+				byte[] mapped = new byte[16];
+				mapped[10] = (byte) 0xFF;
+				mapped[11] = (byte) 0xFF;
+				System.arraycopy(bytes, 0, mapped, 12, 4);
+				return mapped;
+			}
+			return bytes;
+		} catch (UnknownHostException e) {
+			throw new IllegalArgumentException("Invalid IPv6 address: " + address, e);
+		}
+	}
+
+	/**
+	 * Converts 16 network order bytes to the full (uncompressed) IPv6 notation
+	 */
+	public static String bytesToIpv6(byte[] bytes) {
+		char[] chars = new char[39];
+		int position = 0;
+		for (int group = 0; group < 8; group++) {
+			if (group > 0) {
+				chars[position++] = ':';
+			}
+			int value = ((bytes[group * 2] & 0xFF) << 8) | (bytes[group * 2 + 1] & 0xFF);
+			boolean leading = true;
+			for (int shift = 12; shift >= 0; shift -= 4) {
+				int digit = (value >>> shift) & 0xF;
+				if (leading && digit == 0 && shift != 0) {
+					continue;
+				}
+				leading = false;
+				chars[position++] = HEX[digit];
+			}
+		}
+		return new String(chars, 0, position);
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (!(o instanceof IpRange other)) {
+			return false;
+		}
+		if (start instanceof byte[] low && other.start instanceof byte[] otherLow) {
+			return Arrays.equals(low, otherLow) && Arrays.equals((byte[]) end, (byte[]) other.end);
+		}
+		return start.equals(other.start) && end.equals(other.end);
+	}
+
+	@Override
+	public int hashCode() {
+		if (start instanceof byte[] low) {
+			return 31 * Arrays.hashCode(low) + Arrays.hashCode((byte[]) end);
+		}
+		return 31 * start.hashCode() + end.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		if (start instanceof byte[] low) {
+			return "IpRange{" + bytesToIpv6(low) + " - " + bytesToIpv6((byte[]) end) + "}";
+		}
+		return "IpRange{" + longToIpv4((Long) start) + " - " + longToIpv4((Long) end) + "}";
+	}
+}
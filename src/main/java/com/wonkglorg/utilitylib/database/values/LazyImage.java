@@ -0,0 +1,187 @@
+package com.wonkglorg.utilitylib.database.values;
+
+import com.wonkglorg.utilitylib.database.datatypes.TypeHandlerImage;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.SoftReference;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * An image kept in its encoded form, the pixels are only decoded the first time
+ * {@link #getImage()} is called. Mapping rows containing images into this type costs no more than
+ * reading the bytes.
+ * <p>
+ * If caching is enabled the decoded image is kept behind a {@link SoftReference} so repeated
+ * access does not decode again while still allowing the gc to reclaim it under memory pressure.
+ */
+@SuppressWarnings("unused")
+public final class LazyImage {
+	private final byte[] bytes;
+	private final boolean cacheDecoded;
+	private volatile SoftReference<BufferedImage> decoded;
+	private volatile Dimension dimension;
+
+	private LazyImage(byte[] bytes, boolean cacheDecoded) {
+		this.bytes = bytes;
+		this.cacheDecoded = cacheDecoded;
+	}
+
+	/**
+	 * Wraps already encoded image bytes, the array is not copied and must not be modified afterwards
+	 *
+	 * @param bytes the encoded image
+	 * @param cacheDecoded if the decoded image should be kept after the first access
+	 * @return the lazy image
+	 */
+	public static LazyImage of(byte[] bytes, boolean cacheDecoded) {
+		if (bytes == null) {
+			throw new IllegalArgumentException("Image bytes cannot be null");
+		}
+		return new LazyImage(bytes, cacheDecoded);
+	}
+
+	/**
+	 * Wraps already encoded image bytes with decoded image caching enabled
+	 *
+	 * @param bytes the encoded image
+	 * @return the lazy image
+	 */
+	public static LazyImage of(byte[] bytes) {
+		return of(bytes, true);
+	}
+
+	/**
+	 * Encodes an image to create a lazy image from it. The given image is not cached, lossy formats
+	 * like jpg decode to different pixels, so {@link #getImage()} decodes the encoded bytes.
+	 *
+	 * @param image the image to encode
+	 * @param format the informal format name (png, jpg, bmp, gif)
+	 * @return the lazy image
+	 * @throws IOException if the image could not be encoded
+	 */
+	public static LazyImage of(Image image, String format) throws IOException {
+		LazyImage lazyImage = new LazyImage(TypeHandlerImage.encode(image, format), true);
+		if (image instanceof BufferedImage bufferedImage) {
+			//the size survives encoding in every format
+			lazyImage.dimension = new Dimension(bufferedImage.getWidth(), bufferedImage.getHeight());
+		}
+		return lazyImage;
+	}
+
+	/**
+	 * @return the encoded bytes, the returned array is shared and must not be modified
+	 */
+	public byte[] getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * @return the size of the encoded image in bytes
+	 */
+	public int size() {
+		return bytes.length;
+	}
+
+	/**
+	 * @return true if the image was already decoded and is still cached
+	 */
+	public boolean isDecoded() {
+		SoftReference<BufferedImage> reference = decoded;
+		return reference != null && reference.get() != null;
+	}
+
+	/**
+	 * Decodes the image on first access, subsequent calls return the cached image if caching is
+	 * enabled and the image has not been reclaimed
+	 *
+	 * @return the decoded image
+	 * @throws UncheckedIOException if the bytes could not be decoded
+	 */
+	public BufferedImage getImage() {
+		SoftReference<BufferedImage> reference = decoded;
+		BufferedImage image = reference != null ? reference.get() : null;
+		if (image != null) {
+			return image;
+		}
+		try {
+			image = TypeHandlerImage.decode(bytes);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to convert byte array to image", e);
+		}
+		if (image == null) {
+			throw new UncheckedIOException(new IOException("No image reader found for the stored format"));
+		}
+		if (cacheDecoded) {
+			decoded = new SoftReference<>(image);
+		}
+		return image;
+	}
+
+	/**
+	 * Reads the image size from the encoded header without decoding the pixel data
+	 *
+	 * @return the width and height of the image
+	 * @throws UncheckedIOException if the header could not be read
+	 */
+	public Dimension getDimension() {
+		Dimension size = dimension;
+		if (size != null) {
+			return new Dimension(size);
+		}
+		BufferedImage image = isDecoded() ? decoded.get() : null;
+		if (image != null) {
+			size = new Dimension(image.getWidth(), image.getHeight());
+		} else {
+			size = readDimension();
+		}
+		dimension = size;
+		return new Dimension(size);
+	}
+
+	private Dimension readDimension() {
+		try (ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(bytes))) {
+			Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+			if (!readers.hasNext()) {
+				throw new IOException("No image reader found for the stored format");
+			}
+			ImageReader reader = readers.next();
+			try {
+				reader.setInput(input, true, true);
+				return new Dimension(reader.getWidth(0), reader.getHeight(0));
+			} finally {
+				reader.dispose();
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to read image size", e);
+		}
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (!(o instanceof LazyImage other)) {
+			return false;
+		}
+		return Arrays.equals(bytes, other.bytes);
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(bytes);
+	}
+
+	@Override
+	public String toString() {
+		return "LazyImage{size=" + bytes.length + ", decoded=" + isDecoded() + "}";
+	}
+}